@@ -0,0 +1,74 @@
+package com.brewengine.gv4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the 'gvx' lookup done by isLoggedIn, fetchSettings and the phone
+ * toggles, against the JDK's cookie store, {@link IndexedCookieStore} and
+ * {@link CompactCookieStore}, as the cookie jar grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookieBenchmark {
+
+    @Param({"20", "1000"})
+    public int cookies;
+
+    private GV jdk;
+    private GV indexed;
+    private GV compact;
+
+    @Setup
+    public void setup() {
+        jdk = new GV(new CookieManager());
+        indexed = new GV(new CookieManager(new IndexedCookieStore(), CookiePolicy.ACCEPT_ALL));
+        fill(jdk, cookies);
+        compact = new GV(new CookieManager(new CompactCookieStore(), CookiePolicy.ACCEPT_ALL));
+        fill(indexed, cookies);
+        fill(compact, cookies);
+    }
+
+    @Benchmark
+    public String jdkStore() {
+        return jdk.findCookieValue("gvx");
+    }
+
+    @Benchmark
+    public String indexedStore() {
+        return indexed.findCookieValue("gvx");
+    }
+
+    @Benchmark
+    public String compactStore() {
+        return compact.findCookieValue("gvx");
+    }
+
+    /**
+     * Adds the given number of cookies with 'gvx' last, the worst case for a
+     * linear scan.
+     *
+     * @param gv
+     * @param count
+     */
+    static void fill(GV gv, int count) {
+        URI uri = URI.create("https://www.google.com/voice/m");
+        for (int i = 0; i < count; i++) {
+            HttpCookie cookie = new HttpCookie(i == count - 1 ? "gvx" : "cookie" + i, "value" + i);
+            cookie.setDomain(i % 2 == 0 ? ".google.com" : "accounts.google.com");
+            cookie.setPath("/");
+            cookie.setMaxAge(3600);
+            gv.getCookieManager().getCookieStore().add(uri, cookie);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.CookieStore;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap held per session by the cookies of a typical login, for
+ * the JDK's cookie store, {@link IndexedCookieStore} and
+ * {@link CompactCookieStore}.
+ *
+ * Each operation logs in the given number of sessions by feeding their cookie
+ * managers the Set-Cookie headers of the login flow. The retained heap per
+ * session is printed after each iteration; the score is the time taken to
+ * store the cookies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CookieFootprintBenchmark {
+
+    private static final URI ACCOUNTS = URI.create("https://accounts.google.com/ServiceLogin");
+    private static final URI YOUTUBE = URI.create("https://accounts.youtube.com/accounts/CheckConnection");
+    private static final URI VOICE = URI.create("https://www.google.com/voice/m");
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    @Param({"jdk", "indexed", "compact"})
+    public String store;
+
+    @Param({"10000"})
+    public int sessions;
+
+    private final Random random = new Random(0);
+
+    private List<CookieManager> jars;
+    private long baseline;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        jars = null;
+        baseline = usedHeap();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        long retained = usedHeap() - baseline;
+        System.out.printf("%n%s: %d bytes per session (%d cookies kept)%n",
+                store, retained / sessions, jars.get(0).getCookieStore().getCookies().size());
+        jars = null;
+    }
+
+    @Benchmark
+    public List<CookieManager> login() throws IOException {
+        List<CookieManager> managers = new ArrayList<CookieManager>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            CookieManager manager = new CookieManager(newStore(), CookiePolicy.ACCEPT_ALL);
+            manager.put(ACCOUNTS, headers(
+                    "GAPS=1:" + token(60) + "; Max-Age=63072000; Path=/; Secure; HttpOnly",
+                    "GALX=" + token(11) + "; Path=/; Secure",
+                    "_ga=GA1.3." + token(20) + "; Max-Age=63072000; Domain=.google.com; Path=/"));
+            manager.put(ACCOUNTS, headers(
+                    "SID=" + token(71) + "; Max-Age=63072000; Domain=.google.com; Path=/",
+                    "HSID=" + token(17) + "; Max-Age=63072000; Domain=.google.com; Path=/; HttpOnly",
+                    "SSID=" + token(17) + "; Max-Age=63072000; Domain=.google.com; Path=/; Secure; HttpOnly",
+                    "APISID=" + token(34) + "; Max-Age=63072000; Domain=.google.com; Path=/",
+                    "SAPISID=" + token(34) + "; Max-Age=63072000; Domain=.google.com; Path=/; Secure",
+                    "LSID=" + token(71) + "; Max-Age=63072000; Path=/; Secure; HttpOnly",
+                    "ACCOUNT_CHOOSER=" + token(100) + "; Max-Age=63072000; Path=/; Secure; HttpOnly",
+                    "NID=" + token(180) + "; Max-Age=15724800; Domain=.google.com; Path=/; HttpOnly",
+                    "1P_JAR=2015-07-17-18; Max-Age=2592000; Domain=.google.com; Path=/",
+                    "OTZ=" + token(20) + "; Max-Age=2592000; Path=/; Secure"));
+            manager.put(YOUTUBE, headers(
+                    "LOGIN_INFO=" + token(200) + "; Max-Age=63072000; Domain=.youtube.com; Path=/; Secure; HttpOnly",
+                    "VISITOR_INFO1_LIVE=" + token(11) + "; Max-Age=15552000; Domain=.youtube.com; Path=/",
+                    "YSC=" + token(11) + "; Domain=.youtube.com; Path=/; HttpOnly"));
+            manager.put(VOICE, headers(
+                    "gvx=" + token(40) + "; Max-Age=1209600; Domain=.google.com; Path=/; Secure"));
+            managers.add(manager);
+        }
+        jars = managers;
+        return managers;
+    }
+
+    private CookieStore newStore() {
+        if (store.equals("jdk")) {
+            return new CookieManager().getCookieStore();
+        } else if (store.equals("indexed")) {
+            return new IndexedCookieStore();
+        }
+        return new CompactCookieStore();
+    }
+
+    private String token(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    private static Map<String, List<String>> headers(String... cookies) {
+        return ImmutableMap.of("Set-Cookie", Arrays.asList(cookies));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
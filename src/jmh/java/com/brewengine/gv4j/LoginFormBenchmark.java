@@ -0,0 +1,43 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming login form extractor with a full Jsoup parse on
+ * login pages shaped like the ones served during the login flow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginFormBenchmark {
+
+    @Param({"login-email.html", "login-password.html"})
+    public String page;
+
+    private String html;
+
+    @Setup
+    public void setup() throws IOException {
+        html = Resources.toString(Resources.getResource(LoginFormBenchmark.class, page), Charsets.UTF_8);
+    }
+
+    @Benchmark
+    public LoginForm extractor() {
+        return LoginFormExtractor.extract(html, GV.LOGIN_FORM_ID);
+    }
+
+    @Benchmark
+    public LoginForm jsoup() {
+        return LoginForm.valueOf(GV.getLoginFormElement(Jsoup.parse(html)));
+    }
+
+}
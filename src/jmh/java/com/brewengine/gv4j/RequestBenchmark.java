@@ -0,0 +1,52 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.Request;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the phone toggle request, the per-call overhead of
+ * enablePhone/disablePhone and of each batch in setPhonesEnabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    @Param({"1", "10"})
+    public int phones;
+
+    private GV gv;
+    private List<Map.Entry<Phone, Boolean>> batch;
+
+    @Setup
+    public void setup() {
+        gv = new GV();
+        HttpCookie gvx = new HttpCookie("gvx", "AHwCjcjs9_Fh3wDqLkKT0mQ8vK2Yb7fxW7kg");
+        gvx.setDomain(".google.com");
+        gvx.setPath("/");
+        gv.getCookieManager().getCookieStore().add(URI.create("https://www.google.com/voice/m"), gvx);
+
+        ImmutableMap.Builder<Phone, Boolean> builder = ImmutableMap.builder();
+        for (int i = 0; i < phones; i++) {
+            Phone phone = new Phone(i, "Phone " + i, "+15555550" + (100 + i), 2, true, false, 3, 1);
+            builder.put(phone, i % 2 == 0);
+        }
+        batch = builder.build().entrySet().asList();
+    }
+
+    @Benchmark
+    public Request toggleRequest() {
+        return gv.toggleRequest(batch);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.brewengine.gv4j;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding a settings response, mapping it to {@link Settings} and
+ * looking up and comparing the result, for a typical account and one with a
+ * very long forwarding list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettingsBenchmark {
+
+    @Param({"4", "1000"})
+    public int forwards;
+
+    private final Gson gson = new Gson();
+
+    private String response;
+    private GVJson json;
+    private Settings settings;
+    private Settings toggled;
+
+    @Setup
+    public void setup() throws IOException {
+        response = GVJsonReader.XSSI_PREFIX + "\n" + settingsJson(forwards);
+        json = GVJsonReader.read(new StringReader(response));
+        settings = Settings.valueOf(json);
+        toggled = settings.withPhoneEnabled(forwards - 1, !settings.getPhone(forwards - 1).isEnabled());
+    }
+
+    /**
+     * The original decoding: whole body as a String, prefix stripped with
+     * substring and trim, then bound by Gson.
+     */
+    @Benchmark
+    public GVJson gson() {
+        String string = response.substring(GVJsonReader.XSSI_PREFIX.length()).trim();
+        return gson.fromJson(string, GVJson.class);
+    }
+
+    @Benchmark
+    public GVJson reader() throws IOException {
+        return GVJsonReader.read(new StringReader(response));
+    }
+
+    @Benchmark
+    public Settings valueOf() {
+        return Settings.valueOf(json);
+    }
+
+    /**
+     * Streams the response straight into the columns of {@link Settings}.
+     */
+    @Benchmark
+    public Settings readSettings() throws IOException {
+        return GVJsonReader.readSettings(new StringReader(response));
+    }
+
+    @Benchmark
+    public boolean isPhoneEnabled() {
+        return settings.isPhoneEnabled(forwards / 2);
+    }
+
+    @Benchmark
+    public Phone getPhone() {
+        return settings.getPhone(forwards / 2);
+    }
+
+    @Benchmark
+    public SettingsDiff diff() {
+        return settings.diff(toggled);
+    }
+
+    /**
+     * Builds a settings response with the given number of forwarding phones,
+     * every other one disabled, padded with fields GV4J does not use.
+     *
+     * @param forwards
+     * @return
+     */
+    static String settingsJson(int forwards) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"app_version\":13,\"settings_response\":{\"user_preferences\":{");
+        builder.append("\"email_address\":\"example@gmail.com\",\"voicemail_greetings\":[");
+        for (int i = 0; i < 20; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"Greeting ").append(i).append("\"}");
+        }
+        builder.append("],\"default_call_settings\":{\"disabled_forwarding_id\":[");
+        for (int i = 1; i < forwards; i += 2) {
+            builder.append(i == 1 ? "" : ",").append(i);
+        }
+        builder.append("],\"do_not_disturb\":false},\"forwarding\":[");
+        for (int i = 0; i < forwards; i++) {
+            builder.append(i == 0 ? "" : ",")
+                    .append("{\"behavior_on_redirect\":1,\"id\":").append(i)
+                    .append(",\"name\":\"Phone ").append(i)
+                    .append("\",\"phone_number\":\"+1555555").append(String.format("%04d", i))
+                    .append("\",\"policy_bitmask\":3,\"sms_enabled\":false,\"type\":2")
+                    .append(",\"carrier\":\"unknown\",\"verified\":true,\"schedule\":{\"enabled\":false,\"days\":[1,2,3,4,5]}}");
+        }
+        builder.append("]}}}");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs an operation against many accounts of a {@link GVPool}, with at most
+ * a fixed number of accounts in progress at once.
+ *
+ * Operations use the asynchronous {@link GV} API, so no thread is held per
+ * account: requests wait on the pool's dispatcher and results are delivered
+ * to the {@link Listener} from its threads as each account finishes.
+ *
+ * <code>
+ *     BulkExecutor executor = new BulkExecutor(pool, 200);
+ *     BulkExecutor.Report report = executor.execute(accounts,
+ *             BulkExecutor.setPhoneEnabled(phoneId, false), listener).get();
+ * </code>
+ */
+public class BulkExecutor {
+
+    private final GVPool pool;
+    private final int maxConcurrency;
+
+    /**
+     * @param pool source of the (logged in) account sessions
+     * @param maxConcurrency maximum number of accounts in progress at once
+     */
+    public BulkExecutor(GVPool pool, int maxConcurrency) {
+        checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.pool = checkNotNull(pool);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * An operation run once per account.
+     *
+     * @param <T> result type
+     */
+    public interface Task<T> {
+        ListenableFuture<T> run(GV gv);
+    }
+
+    /**
+     * Receives each account's outcome as soon as it is known. Called from
+     * the dispatcher's threads, possibly concurrently, so implementations
+     * must be thread-safe and should return quickly. Exceptions thrown by a
+     * listener are ignored.
+     *
+     * @param <T> result type
+     */
+    public interface Listener<T> {
+        void onSuccess(String account, T result);
+
+        void onFailure(String account, Throwable t);
+    }
+
+    public static Task<Settings> fetchSettings() {
+        return new Task<Settings>() {
+            @Override
+            public ListenableFuture<Settings> run(GV gv) {
+                return gv.fetchSettingsAsync();
+            }
+        };
+    }
+
+    /**
+     * Enables or disables the phone with the given id. Accounts on which the
+     * phone is already in the requested state are not toggled again.
+     *
+     * @param phoneId
+     * @param enabled
+     * @return
+     */
+    public static Task<Void> setPhoneEnabled(final int phoneId, final boolean enabled) {
+        return new Task<Void>() {
+            @Override
+            public ListenableFuture<Void> run(final GV gv) {
+                return Futures.transform(gv.fetchSettingsAsync(), new AsyncFunction<Settings, Void>() {
+                    @Override
+                    public ListenableFuture<Void> apply(Settings settings) throws IOException {
+                        Phone phone = settings.getPhone(phoneId);
+                        if (phone == null) {
+                            throw new IOException("Unknown phone id: " + phoneId);
+                        }
+                        if (phone.isEnabled() == enabled) {
+                            return Futures.immediateFuture(null);
+                        }
+                        return gv.setPhonesEnabledAsync(ImmutableMap.of(phone, enabled));
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Brings every account to the same set of enabled phones.
+     *
+     * @param enabledIds ids of the phones which should be enabled
+     * @return
+     * @see GV#reconcile(Set)
+     */
+    public static Task<ReconcileReport> reconcile(final Set<Integer> enabledIds) {
+        checkNotNull(enabledIds);
+        return new Task<ReconcileReport>() {
+            @Override
+            public ListenableFuture<ReconcileReport> run(GV gv) {
+                return gv.reconcileAsync(enabledIds);
+            }
+        };
+    }
+
+    public static Task<Void> logout() {
+        return new Task<Void>() {
+            @Override
+            public ListenableFuture<Void> run(GV gv) {
+                return gv.logoutAsync();
+            }
+        };
+    }
+
+    /**
+     * Runs the task for every account.
+     *
+     * The returned future completes once every account has finished; a
+     * failing account does not stop the others. Cancelling it stops further
+     * accounts from being started.
+     *
+     * @param accounts
+     * @param task
+     * @param listener
+     * @return future report of the whole run
+     */
+    public <T> ListenableFuture<Report> execute(Iterable<String> accounts, Task<T> task, Listener<? super T> listener) {
+        Run<T> run = new Run<T>(checkNotNull(accounts).iterator(), checkNotNull(task), checkNotNull(listener));
+        run.start();
+        return run.result;
+    }
+
+    private class Run<T> {
+
+        private final Iterator<String> accounts;
+        private final Task<T> task;
+        private final Listener<? super T> listener;
+
+        private final SettableFuture<Report> result = SettableFuture.create();
+        private final AtomicInteger slots = new AtomicInteger();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final long start = System.nanoTime();
+
+        Run(Iterator<String> accounts, Task<T> task, Listener<? super T> listener) {
+            this.accounts = accounts;
+            this.task = task;
+            this.listener = listener;
+        }
+
+        void start() {
+            slots.set(maxConcurrency);
+            for (int i = 0; i < maxConcurrency; i++) {
+                next();
+            }
+        }
+
+        /**
+         * Keeps one slot busy: starts accounts until one has to be waited
+         * for, looping rather than recursing over those already complete.
+         */
+        private void next() {
+            while (true) {
+                final String account = nextAccount();
+                if (account == null) {
+                    if (slots.decrementAndGet() == 0) {
+                        result.set(new Report(succeeded.get(), failed.get(), System.nanoTime() - start));
+                    }
+                    return;
+                }
+
+                final ListenableFuture<T> future;
+                try {
+                    future = task.run(pool.session(account));
+                } catch (RuntimeException e) {
+                    failed(account, e);
+                    continue;
+                }
+
+                if (!future.isDone()) {
+                    future.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            complete(account, future);
+                            next();
+                        }
+                    }, MoreExecutors.directExecutor());
+                    return;
+                }
+                complete(account, future);
+            }
+        }
+
+        private String nextAccount() {
+            if (result.isCancelled()) {
+                return null;
+            }
+            synchronized (accounts) {
+                return accounts.hasNext() ? accounts.next() : null;
+            }
+        }
+
+        private void complete(String account, ListenableFuture<T> future) {
+            T value;
+            try {
+                value = Futures.getUnchecked(future);
+            } catch (RuntimeException e) {
+                failed(account, e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            succeeded.incrementAndGet();
+            try {
+                listener.onSuccess(account, value);
+            } catch (RuntimeException ignored) {
+                // must not cost the slot
+            }
+        }
+
+        private void failed(String account, Throwable t) {
+            failed.incrementAndGet();
+            try {
+                listener.onFailure(account, t);
+            } catch (RuntimeException ignored) {
+                // must not cost the slot
+            }
+        }
+    }
+
+    /**
+     * Outcome of a whole run.
+     */
+    public static class Report {
+
+        private final long successCount;
+        private final long failureCount;
+        private final long elapsedNanos;
+
+        Report(long successCount, long failureCount, long elapsedNanos) {
+            this.successCount = successCount;
+            this.failureCount = failureCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return accounts finished per second
+         */
+        public double getThroughput() {
+            long count = successCount + failureCount;
+            return elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Report{succeeded=%d, failed=%d, elapsed=%dms, throughput=%.1f/s}",
+                    successCount, failureCount, getElapsed(TimeUnit.MILLISECONDS), getThroughput());
+        }
+    }
+
+}
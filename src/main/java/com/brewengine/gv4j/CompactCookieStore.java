@@ -0,0 +1,391 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link CookieStore} for holding the cookies of many sessions, such as the
+ * sessions of a {@link GVPool}, in as little memory as possible.
+ *
+ * Rather than keeping every {@link HttpCookie} and indexing it by domain and
+ * URI as the JDK's store does, each cookie is kept as a small entry: its
+ * name, domain and path are interned in a table shared by all stores, its
+ * value is packed into bytes, and its expiry is a single absolute time.
+ * Cookies are turned back into {@link HttpCookie} objects when they are
+ * asked for.
+ *
+ * Cookies GV never sends are not stored at all: by default those for hosts
+ * outside google.com, which the login flow picks up along its redirects, and
+ * analytics and preference cookies.
+ *
+ * Lookups are lock-free; modifications are serialized and replace the
+ * store's small array of entries. Expired cookies are dropped as they are
+ * found.
+ */
+public class CompactCookieStore implements CookieStore {
+
+    /**
+     * Keeps cookies for google.com and its subdomains, except analytics and
+     * preference cookies.
+     */
+    public static final Predicate<HttpCookie> GV_COOKIES = new Predicate<HttpCookie>() {
+        @Override
+        public boolean apply(HttpCookie cookie) {
+            String name = cookie.getName();
+            if (name.startsWith("__utm") || name.startsWith("_ga") || UNUSED_COOKIES.contains(name)) {
+                return false;
+            }
+            String domain = cookie.getDomain();
+            if (domain == null) {
+                return true;
+            }
+            if (domain.startsWith(".")) {
+                domain = domain.substring(1);
+            }
+            return IndexedCookieStore.domainMatches(GOOGLE, 0, domain);
+        }
+    };
+
+    private static final String GOOGLE = ".google.com";
+
+    private static final Set<String> UNUSED_COOKIES = ImmutableSet.of(
+            "_gid", "1P_JAR", "DV", "OGP", "OGPC", "OTZ", "SEARCH_SAMESITE", "UULE");
+
+    /**
+     * Names, domains and paths, shared by every store.
+     */
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private static final int SECURE = 1;
+    private static final int HTTP_ONLY = 1 << 1;
+    private static final int VERSION_1 = 1 << 2;
+    private static final int UTF_8 = 1 << 3;
+    /**
+     * The cookie had no domain; the entry's domain is the host it came from
+     * and only that host matches.
+     */
+    private static final int HOST_ONLY = 1 << 4;
+
+    private final Predicate<HttpCookie> filter;
+
+    private volatile Entry[] entries = EMPTY;
+
+    public CompactCookieStore() {
+        this(GV_COOKIES);
+    }
+
+    /**
+     * @param filter decides which cookies are stored
+     */
+    public CompactCookieStore(Predicate<HttpCookie> filter) {
+        this.filter = checkNotNull(filter);
+    }
+
+    /**
+     * @return an empty store with the same filter
+     */
+    CompactCookieStore newStore() {
+        return new CompactCookieStore(filter);
+    }
+
+    /**
+     * Finds an unexpired cookie by name, regardless of its domain.
+     *
+     * @param name
+     * @return the cookie, or null if there is none
+     */
+    public HttpCookie find(String name) {
+        Entry entry = findEntry(name);
+        return entry == null ? null : entry.toCookie(System.currentTimeMillis());
+    }
+
+    /**
+     * Finds the value of an unexpired cookie by name, regardless of its
+     * domain, without building an {@link HttpCookie}.
+     *
+     * @param name
+     * @return the value, or null if there is no such cookie
+     */
+    public String findValue(String name) {
+        Entry entry = findEntry(name);
+        return entry == null ? null : entry.value();
+    }
+
+    /**
+     * Returns when an unexpired cookie expires.
+     *
+     * @param name
+     * @return milliseconds since the epoch, {@link Long#MAX_VALUE} for a
+     * cookie that lasts as long as the session, or 0 if there is no such
+     * cookie
+     */
+    public long getExpiry(String name) {
+        Entry entry = findEntry(name);
+        return entry == null ? 0 : entry.expiresAt;
+    }
+
+    /**
+     * Replaces the content of this store with the other's in one step: a
+     * reader sees either all of the old cookies or all of the new.
+     *
+     * @param other
+     */
+    public synchronized void replaceWith(CompactCookieStore other) {
+        // entries are immutable, so they can be shared
+        entries = checkNotNull(other).entries;
+    }
+
+    /**
+     * @return number of cookies held, including any which expired but have
+     * not been dropped yet
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    private Entry findEntry(String name) {
+        checkNotNull(name);
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries) {
+            if (entry.name.equals(name)) {
+                if (entry.hasExpired(now)) {
+                    purge();
+                } else {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void add(URI uri, HttpCookie cookie) {
+        checkNotNull(cookie);
+
+        long now = System.currentTimeMillis();
+        Entry[] current = entries;
+        List<Entry> updated = new ArrayList<Entry>(current.length + 1);
+        for (Entry entry : current) {
+            if (!entry.matches(cookie) && !entry.hasExpired(now)) {
+                updated.add(entry);
+            }
+        }
+        // a max-age of 0 is a request to delete the cookie
+        if (cookie.getMaxAge() != 0 && filter.apply(cookie)) {
+            String host = uri == null ? null : uri.getHost();
+            if (cookie.getDomain() != null || host != null) {
+                updated.add(Entry.valueOf(cookie, host, now));
+            }
+        }
+        entries = updated.toArray(EMPTY);
+    }
+
+    @Override
+    public List<HttpCookie> get(URI uri) {
+        String host = checkNotNull(uri).getHost();
+        List<HttpCookie> matches = new ArrayList<HttpCookie>();
+        if (host == null) {
+            return matches;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries) {
+            if (entry.hasExpired(now)) {
+                purge();
+            } else if (entry.domainMatches(host)) {
+                matches.add(entry.toCookie(now));
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<HttpCookie> getCookies() {
+        long now = System.currentTimeMillis();
+        List<HttpCookie> all = new ArrayList<HttpCookie>();
+        for (Entry entry : entries) {
+            if (entry.hasExpired(now)) {
+                purge();
+            } else {
+                all.add(entry.toCookie(now));
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public List<URI> getURIs() {
+        Set<URI> uris = new LinkedHashSet<URI>();
+        for (Entry entry : entries) {
+            String host = entry.domain.startsWith(".") ? entry.domain.substring(1) : entry.domain;
+            try {
+                uris.add(new URI((entry.flags & SECURE) != 0 ? "https" : "http", host, null, null));
+            } catch (URISyntaxException ignored) {
+            }
+        }
+        return new ArrayList<URI>(uris);
+    }
+
+    @Override
+    public synchronized boolean remove(URI uri, HttpCookie cookie) {
+        checkNotNull(cookie);
+
+        Entry[] current = entries;
+        List<Entry> updated = new ArrayList<Entry>(current.length);
+        for (Entry entry : current) {
+            if (!entry.matches(cookie)) {
+                updated.add(entry);
+            }
+        }
+        if (updated.size() == current.length) {
+            return false;
+        }
+        entries = updated.toArray(EMPTY);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll() {
+        boolean empty = entries.length == 0;
+        entries = EMPTY;
+        return !empty;
+    }
+
+    private synchronized void purge() {
+        long now = System.currentTimeMillis();
+        Entry[] current = entries;
+        List<Entry> updated = new ArrayList<Entry>(current.length);
+        for (Entry entry : current) {
+            if (!entry.hasExpired(now)) {
+                updated.add(entry);
+            }
+        }
+        if (updated.size() != current.length) {
+            entries = updated.toArray(EMPTY);
+        }
+    }
+
+    private static String intern(String s) {
+        return s == null ? null : STRINGS.intern(s);
+    }
+
+    private static class Entry {
+        final String name;
+        final String domain;
+        final String path;
+        final byte[] value;
+        final long expiresAt;
+        final byte flags;
+
+        private Entry(String name, String domain, String path, byte[] value, long expiresAt, int flags) {
+            this.name = name;
+            this.domain = domain;
+            this.path = path;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.flags = (byte) flags;
+        }
+
+        static Entry valueOf(HttpCookie cookie, String host, long now) {
+            int flags = 0;
+            if (cookie.getSecure()) {
+                flags |= SECURE;
+            }
+            if (cookie.isHttpOnly()) {
+                flags |= HTTP_ONLY;
+            }
+            if (cookie.getVersion() != 0) {
+                flags |= VERSION_1;
+            }
+
+            String domain = cookie.getDomain();
+            if (domain == null) {
+                domain = host;
+                flags |= HOST_ONLY;
+            }
+
+            String value = cookie.getValue() == null ? "" : cookie.getValue();
+            byte[] packed;
+            if (isLatin1(value)) {
+                packed = value.getBytes(Charsets.ISO_8859_1);
+            } else {
+                packed = value.getBytes(Charsets.UTF_8);
+                flags |= UTF_8;
+            }
+
+            long maxAge = cookie.getMaxAge();
+            long expiresAt = maxAge < 0 ? Long.MAX_VALUE : now + maxAge * 1000;
+            return new Entry(intern(cookie.getName()), intern(domain.toLowerCase(Locale.US)), intern(cookie.getPath()),
+                    packed, expiresAt, flags);
+        }
+
+        boolean hasExpired(long now) {
+            return expiresAt <= now;
+        }
+
+        boolean domainMatches(String host) {
+            if ((flags & HOST_ONLY) != 0) {
+                return host.equalsIgnoreCase(domain);
+            }
+            return IndexedCookieStore.domainMatches(domain, (flags & VERSION_1) != 0 ? 1 : 0, host);
+        }
+
+        /**
+         * Same identity as {@link HttpCookie#equals(Object)}: name and domain
+         * ignoring case, and path.
+         */
+        boolean matches(HttpCookie cookie) {
+            String cookieDomain = cookie.getDomain();
+            return name.equalsIgnoreCase(cookie.getName())
+                    && ((flags & HOST_ONLY) != 0 ? cookieDomain == null : domain.equalsIgnoreCase(cookieDomain))
+                    && (path == null ? cookie.getPath() == null : path.equals(cookie.getPath()));
+        }
+
+        String value() {
+            return new String(value, (flags & UTF_8) != 0 ? Charsets.UTF_8 : Charsets.ISO_8859_1);
+        }
+
+        HttpCookie toCookie(long now) {
+            HttpCookie cookie = new HttpCookie(name, value());
+            cookie.setVersion((flags & VERSION_1) != 0 ? 1 : 0);
+            if ((flags & HOST_ONLY) == 0) {
+                cookie.setDomain(domain);
+            }
+            cookie.setPath(path);
+            cookie.setSecure((flags & SECURE) != 0);
+            cookie.setHttpOnly((flags & HTTP_ONLY) != 0);
+            if (expiresAt != Long.MAX_VALUE) {
+                // rounded up, so an unexpired entry never yields an expired cookie
+                cookie.setMaxAge((expiresAt - now + 999) / 1000);
+            }
+            return cookie;
+        }
+
+        private static boolean isLatin1(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of requests in flight across every client it is
+ * installed on, adapting the limit to what the service can handle (AIMD).
+ *
+ * Each request which completes in time raises the limit by 1/limit, so the
+ * limit grows by about one per round of requests. A dropped request (an I/O
+ * error, a 429 or 5xx response, or a response slower than the latency
+ * threshold) multiplies the limit by the backoff ratio. A call cancelled on
+ * purpose, such as the losing attempt of a hedged read, only frees its slot.
+ * Requests beyond the limit wait in the calling thread until a slot frees up.
+ *
+ * A slot is held until the response headers arrive. {@link GVPool} shares
+ * a limiter between all of its sessions, through a {@link RequestScheduler}
+ * which decides which waiting request gets the next slot.
+ *
+ * <code>
+ *     ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+ *             .limits(1, 64)
+ *             .latencyThreshold(2, TimeUnit.SECONDS)
+ *             .build();
+ * </code>
+ */
+public class ConcurrencyLimiter implements Interceptor {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    // guarded by this
+    private double limit;
+    private int inFlight;
+    private int queueDepth;
+    private long dropCount;
+
+    private ConcurrencyLimiter(Builder builder) {
+        minLimit = builder.minLimit;
+        maxLimit = builder.maxLimit;
+        backoffRatio = builder.backoffRatio;
+        latencyThresholdNanos = builder.latencyThresholdNanos;
+        limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        acquire();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            if (GV.isCanceled(request, e)) {
+                release();
+            } else {
+                release(true);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            release(true);
+            throw e;
+        }
+        release(isDropped(response.code(), System.nanoTime() - start));
+        return response;
+    }
+
+    /**
+     * @return current number of requests allowed in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of requests waiting for a slot
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of requests which lowered the limit
+     */
+    public synchronized long getDropCount() {
+        return dropCount;
+    }
+
+    /**
+     * Waits for a slot.
+     *
+     * @throws InterruptedIOException
+     */
+    synchronized void acquire() throws InterruptedIOException {
+        queueDepth++;
+        try {
+            while (inFlight >= (int) limit) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a request slot.");
+        } finally {
+            queueDepth--;
+        }
+        inFlight++;
+    }
+
+    /**
+     * Takes a slot if one is free beyond the given headroom, without waiting.
+     * A request is always let through when none is in flight.
+     *
+     * @param headroom slots to leave free
+     * @return true if a slot was taken
+     */
+    synchronized boolean tryAcquire(int headroom) {
+        if (inFlight > 0 && inFlight >= (int) limit - headroom) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Frees a slot without adapting the limit, for a request which was
+     * cancelled or never sent.
+     */
+    synchronized void release() {
+        inFlight--;
+        if (queueDepth > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Frees a slot and adapts the limit to the request's outcome.
+     *
+     * @param dropped
+     */
+    synchronized void release(boolean dropped) {
+        inFlight--;
+        if (dropped) {
+            dropCount++;
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        if (queueDepth > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @param code response code
+     * @param latencyNanos time to the response headers
+     * @return true if the response shows the service is overloaded
+     */
+    boolean isDropped(int code, long latencyNanos) {
+        return code == 429 || code >= 500 || latencyNanos > latencyThresholdNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConcurrencyLimiter{limit=" + (int) limit + ", inFlight=" + inFlight
+                + ", queueDepth=" + queueDepth + ", drops=" + dropCount + "}";
+    }
+
+    public static class Builder {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private double backoffRatio = 0.9;
+        private long latencyThresholdNanos = TimeUnit.SECONDS.toNanos(5);
+
+        /**
+         * Limit to start from; clamped to the bounds.
+         *
+         * @param initialLimit
+         * @return
+         */
+        public Builder initialLimit(int initialLimit) {
+            checkArgument(initialLimit > 0, "initialLimit must be positive");
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Bounds of the limit.
+         *
+         * @param min
+         * @param max
+         * @return
+         */
+        public Builder limits(int min, int max) {
+            checkArgument(min > 0, "min must be positive");
+            checkArgument(max >= min, "max must not be less than min");
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * Factor the limit is multiplied by when a request is dropped.
+         *
+         * @param backoffRatio
+         * @return
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            checkArgument(backoffRatio >= 0.5 && backoffRatio < 1, "backoffRatio must be in [0.5, 1)");
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Responses slower than this count as dropped.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder latencyThreshold(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "duration must be positive");
+            this.latencyThresholdNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+
+}
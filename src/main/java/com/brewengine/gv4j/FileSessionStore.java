@@ -0,0 +1,198 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpCookie;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores each account's cookies as a JSON file in a local directory.
+ *
+ * Cookie expiry is stored as an absolute time, computed from the max-age of
+ * the cookies at the time of saving. {@link IndexedCookieStore} and
+ * {@link CompactCookieStore} report the time each cookie has left, so the
+ * expiry they recorded is kept. The JDK's store reports the original max-age,
+ * so its cookies may outlive the originals by the time they had already been
+ * held. Use {@link GV#validateSession()} to confirm a restored session is
+ * still accepted.
+ *
+ * The files hold the session tokens, so on POSIX file systems they are
+ * readable and writable by their owner only. Elsewhere, such as on Windows,
+ * restricting access is best effort and the files inherit the directory's
+ * permissions.
+ */
+public class FileSessionStore implements SessionStore {
+
+    private static final String SUFFIX = ".json";
+
+    /**
+     * Whether files have POSIX owner, group and other permissions, which
+     * {@link File#setReadable(boolean, boolean)} and
+     * {@link File#setWritable(boolean, boolean)} then map onto.
+     */
+    private static final boolean POSIX = File.separatorChar == '/';
+
+    private final File directory;
+    private final Gson gson = new Gson();
+
+    public FileSessionStore(File directory) {
+        checkNotNull(directory);
+        checkArgument(directory.isDirectory() || directory.mkdirs(), "Unable to create directory: %s", directory);
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void save(String account, List<HttpCookie> cookies) throws IOException {
+        checkNotNull(cookies);
+
+        long now = System.currentTimeMillis();
+        List<StoredCookie> stored = new ArrayList<StoredCookie>(cookies.size());
+        for (HttpCookie cookie : cookies) {
+            if (!cookie.hasExpired()) {
+                stored.add(StoredCookie.valueOf(cookie, now));
+            }
+        }
+
+        File file = fileFor(account);
+        File temp = new File(directory, file.getName() + ".tmp");
+        createPrivate(temp);
+        Writer writer = Files.newWriter(temp, Charsets.UTF_8);
+        try {
+            gson.toJson(stored.toArray(new StoredCookie[stored.size()]), writer);
+        } finally {
+            writer.close();
+        }
+
+        // replace atomically where the platform allows it
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("Unable to write " + file);
+        }
+    }
+
+    @Override
+    public synchronized List<HttpCookie> load(String account) throws IOException {
+        File file = fileFor(account);
+        List<HttpCookie> cookies = new ArrayList<HttpCookie>();
+        if (!file.isFile()) {
+            return cookies;
+        }
+
+        StoredCookie[] stored;
+        Reader reader = Files.newReader(file, Charsets.UTF_8);
+        try {
+            stored = gson.fromJson(reader, StoredCookie[].class);
+        } catch (JsonParseException e) {
+            throw new IOException("Corrupt session file " + file, e);
+        } finally {
+            reader.close();
+        }
+
+        long now = System.currentTimeMillis();
+        if (stored != null) {
+            for (StoredCookie cookie : stored) {
+                if (cookie.expires < 0 || cookie.expires > now) {
+                    cookies.add(cookie.toHttpCookie(now));
+                }
+            }
+        }
+        return cookies;
+    }
+
+    @Override
+    public synchronized void delete(String account) throws IOException {
+        File file = fileFor(account);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Creates an empty file only its owner can read and write, before any
+     * cookie is written to it. Only POSIX file systems fail the save if
+     * access cannot be restricted.
+     *
+     * @param file
+     * @throws IOException
+     */
+    private static void createPrivate(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        if (!file.createNewFile()) {
+            throw new IOException("Unable to create " + file);
+        }
+        // Windows has no permissions for everybody but the owner to take away
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true);
+        if (!restricted && POSIX) {
+            throw new IOException("Unable to restrict access to " + file);
+        }
+    }
+
+    private File fileFor(String account) {
+        checkNotNull(account);
+        try {
+            return new File(directory, URLEncoder.encode(account, "UTF-8") + SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static class StoredCookie {
+        String name;
+        String value;
+        String domain;
+        String path;
+        boolean secure;
+        boolean httpOnly;
+        int version;
+
+        /**
+         * Absolute expiry in milliseconds since the epoch, or -1 for a
+         * session cookie.
+         */
+        long expires;
+
+        static StoredCookie valueOf(HttpCookie cookie, long now) {
+            StoredCookie stored = new StoredCookie();
+            stored.name = cookie.getName();
+            stored.value = cookie.getValue();
+            stored.domain = cookie.getDomain();
+            stored.path = cookie.getPath();
+            stored.secure = cookie.getSecure();
+            stored.httpOnly = cookie.isHttpOnly();
+            stored.version = cookie.getVersion();
+            stored.expires = cookie.getMaxAge() < 0 ? -1 : now + cookie.getMaxAge() * 1000;
+            return stored;
+        }
+
+        HttpCookie toHttpCookie(long now) {
+            HttpCookie cookie = new HttpCookie(name, value);
+            cookie.setDomain(domain);
+            cookie.setPath(path);
+            cookie.setSecure(secure);
+            cookie.setHttpOnly(httpOnly);
+            cookie.setVersion(version);
+            cookie.setMaxAge(expires < 0 ? -1 : (expires - now) / 1000);
+            return cookie;
+        }
+    }
+
+}
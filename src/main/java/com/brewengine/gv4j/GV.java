@@ -1,17 +1,38 @@
 package com.brewengine.gv4j;
 
-import com.google.gson.Gson;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.squareup.okhttp.*;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
+import java.net.CookieStore;
 import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -20,36 +41,164 @@ public class GV {
 
     public final int API_VERSION = 13;
 
-    private final OkHttpClient client = new OkHttpClient();
+    /**
+     * Maximum number of phones sent in a single settings request; larger
+     * batches are split to keep the query string at a reasonable length.
+     */
+    public static final int MAX_PHONES_PER_REQUEST = 10;
+
+    static final String LOGIN_FORM_ID = "gaia_loginform";
+
+    /**
+     * Hosts every session talks to, connected to ahead of time by warmUp().
+     */
+    static final List<String> WARM_UP_URLS = ImmutableList.of(
+            "https://accounts.google.com/",
+            "https://www.google.com/");
+
+    /**
+     * Requests whose call was cancelled by {@link #call(OkHttpClient, Request)},
+     * by identity; the interceptors cannot see the call itself.
+     */
+    private static final Set<Request> CANCELED =
+            Collections.newSetFromMap(new MapMaker().weakKeys().<Request, Boolean>makeMap());
+
+    private final OkHttpClient client;
     private final CookieManager cookieManager;
 
-    private final Gson gson = new Gson();
+    private final MetricsInterceptor metrics;
+    private final SettingsEndpoint settingsEndpoint = new SettingsEndpoint(API_VERSION);
+
+    private volatile SettingsCache settingsCache;
+    private volatile HedgePolicy hedgePolicy;
+
+    private final AtomicReference<SettingsFetch> settingsFetch = new AtomicReference<SettingsFetch>();
 
     public GV() {
-        this(new CookieManager());
+        this(new CookieManager(new IndexedCookieStore(), CookiePolicy.ACCEPT_ALL));
     }
 
     public GV(CookieManager cookieManager) {
-        this.cookieManager = cookieManager;
+        this(new OkHttpClient(), cookieManager);
+    }
+
+    /**
+     * Creates a session whose requests are sent by the given transport
+     * rather than by OkHttp's own network layer.
+     *
+     * @param transport
+     */
+    public GV(Transport transport) {
+        this(transport, new CookieManager(new IndexedCookieStore(), CookiePolicy.ACCEPT_ALL));
+    }
+
+    public GV(Transport transport, CookieManager cookieManager) {
+        this(new OkHttpClient(), cookieManager, checkNotNull(transport));
+    }
+
+    GV(OkHttpClient client, CookieManager cookieManager) {
+        this(client, cookieManager, null);
+    }
+
+    /**
+     * Creates a session on the given client, which must not be shared with
+     * other sessions since its cookie handler is replaced. Use
+     * {@link OkHttpClient#clone()} to share a connection pool and dispatcher.
+     *
+     * @param client
+     * @param cookieManager
+     * @param transport sends the requests, or null for OkHttp's network layer
+     */
+    GV(OkHttpClient client, CookieManager cookieManager, Transport transport) {
+        this.client = checkNotNull(client);
+        this.cookieManager = checkNotNull(cookieManager);
 
         // http://stackoverflow.com/a/24267060/196486
         cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
         client.setCookieHandler(cookieManager);
 
 //		client.networkInterceptors().add(new LoggingInterceptor());
+
+        metrics = findOrAddInterceptor(client, MetricsInterceptor.class, new MetricsInterceptor());
+        if (transport != null) {
+            // must come last, it ends the chain
+            client.interceptors().add(new TransportInterceptor(transport, cookieManager));
+        }
     }
 
     public CookieManager getCookieManager() {
         return cookieManager;
     }
 
+    OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the metrics recorded for this session's requests. Sessions from
+     * a {@link GVPool} share the metrics of the whole pool.
+     *
+     * @return
+     */
+    public MetricsInterceptor getMetrics() {
+        return metrics;
+    }
+
+    public SettingsCache getSettingsCache() {
+        return settingsCache;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * Sets the policy used to hedge the idempotent reads (the settings fetch
+     * and the login page fetch), or disables hedging if null.
+     *
+     * @param hedgePolicy
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Sets the cache used by fetchSettings(), or disables caching if null.
+     *
+     * @param settingsCache
+     */
+    public void setSettingsCache(SettingsCache settingsCache) {
+        this.settingsCache = settingsCache;
+    }
+
+    /**
+     * Opens a connection to each of the Google hosts GV4J uses, so that the
+     * first login or settings fetch does not pay for DNS, TCP and TLS setup.
+     * The connections stay in the client's pool for its keep-alive duration.
+     *
+     * @return report of how long warm-up took
+     * @throws IOException
+     */
+    public WarmUpReport warmUp() throws IOException {
+        return getResult(warmUpAsync());
+    }
+
+    /**
+     * Asynchronous variant of {@link #warmUp()}.
+     *
+     * @return future report
+     */
+    public ListenableFuture<WarmUpReport> warmUpAsync() {
+        return WarmUpReport.warmUp(client, WARM_UP_URLS, 1);
+    }
+
     /**
      * Determines if we are logged in by checking for the presence of the 'gvx' cookie.
      *
      * @return
      */
     public boolean isLoggedIn() {
-        return findCookieByName("gvx") != null;
+        return findCookieValue("gvx") != null;
     }
 
     /**
@@ -63,58 +212,77 @@ public class GV {
         checkNotNull(username);
         checkNotNull(password);
 
-        Request request = new Request.Builder()
-                .url("https://accounts.google.com/ServiceLogin?service=grandcentral&continue=https://www.google.com/voice/m?initialauth&followup=https://www.google.com/voice/m?initialauth")
-                .build();
+        Response response = executeIdempotent(loginPageRequest());
+        LoginForm loginForm = readLoginForm(response, "Failed to find login form element.");
 
-        Response response = client.newCall(request).execute();
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected response: " + response);
-        }
+        // 1st login request we send username
+        response = client.newCall(loginRequest(loginForm, username, password, Operation.LOGIN_USERNAME)).execute();
+        loginForm = readLoginForm(response, "Failed to find login form element (2).");
 
-        String body = response.body().string();
-        Document document = Jsoup.parse(body);
-        Element loginForm = getLoginFormElement(document);
-        if (loginForm == null) {
-            throw new IOException("Failed to find login form element.");
-        }
+        // 2nd login request we send password
+        response = client.newCall(loginRequest(loginForm, username, password, Operation.LOGIN_PASSWORD)).execute();
+        checkLoggedIn(response);
+    }
+
+    /**
+     * Asynchronous variant of {@link #login(String, String)}.
+     *
+     * Each step of the login flow is enqueued once the previous response has
+     * arrived, so no thread is held while waiting on the network.
+     *
+     * @param username
+     * @param password
+     * @return future that completes once logged in
+     */
+    public ListenableFuture<Void> loginAsync(final String username, final String password) {
+        checkNotNull(username);
+        checkNotNull(password);
 
         // 1st login request we send username
-        response = login(loginForm, username, password);
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected response: " + response);
-        }
-//        System.out.println("response="+response.body().string());
-        body = response.body().string();
-        document = Jsoup.parse(body);
-        loginForm = getLoginFormElement(document);
-        if (loginForm == null) {
-            throw new IOException("Failed to find login form element (2).");
-        }
+        ListenableFuture<Response> step1 = Futures.transform(enqueueIdempotent(loginPageRequest()), new AsyncFunction<Response, Response>() {
+            @Override
+            public ListenableFuture<Response> apply(Response response) throws IOException {
+                LoginForm loginForm = readLoginForm(response, "Failed to find login form element.");
+                return enqueue(loginRequest(loginForm, username, password, Operation.LOGIN_USERNAME));
+            }
+        });
 
         // 2nd login request we send password
-        response = login(loginForm, username, password);
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected response: " + response + "(2)");
-        }
-//        System.out.println("response="+response.body().string());
+        ListenableFuture<Response> step2 = Futures.transform(step1, new AsyncFunction<Response, Response>() {
+            @Override
+            public ListenableFuture<Response> apply(Response response) throws IOException {
+                LoginForm loginForm = readLoginForm(response, "Failed to find login form element (2).");
+                return enqueue(loginRequest(loginForm, username, password, Operation.LOGIN_PASSWORD));
+            }
+        });
 
-        if (!isLoggedIn()) {
-            throw new IOException("Missing gvx cookie.");
-        }
+        return Futures.transform(step2, new AsyncFunction<Response, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Response response) throws IOException {
+                checkLoggedIn(response);
+                return Futures.immediateFuture(null);
+            }
+        });
+    }
+
+    private static Request loginPageRequest() {
+        return new Request.Builder()
+                .url("https://accounts.google.com/ServiceLogin?service=grandcentral&continue=https://www.google.com/voice/m?initialauth&followup=https://www.google.com/voice/m?initialauth")
+                .tag(Operation.LOGIN_PAGE)
+                .build();
     }
 
-    private Response login(Element form, String username, String password) throws IOException {
-        String action = form.attr("action");
-        Elements inputs = form.getElementsByTag("input");
-        if (inputs == null || inputs.size() == 0) {
+    private static Request loginRequest(LoginForm form, String username, String password, Operation operation) throws IOException {
+        String action = form.getAction();
+        List<LoginForm.Input> inputs = form.getInputs();
+        if (inputs.isEmpty()) {
             throw new IOException("Login form inputs not found.");
         }
 
         FormEncodingBuilder builder = new FormEncodingBuilder();
-        for (Element input : inputs) {
-            String name = input.attr("name");
-            String value = input.attr("value");
+        for (LoginForm.Input input : inputs) {
+            String name = input.getName();
+            String value = input.getValue();
 
             if (!name.isEmpty()) {
                 if (name.equalsIgnoreCase("Email") && value.isEmpty()) {
@@ -128,12 +296,203 @@ public class GV {
         }
         RequestBody requestBody = builder.build();
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(action)
                 .post(requestBody)
+                .tag(operation)
                 .build();
+    }
+
+    private static LoginForm readLoginForm(Response response, String error) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected response: " + response);
+        }
+
+        String body = response.body().string();
+        LoginForm loginForm = findLoginForm(body);
+        if (loginForm == null) {
+            throw new IOException(error);
+        }
+        return loginForm;
+    }
+
+    /**
+     * Finds the login form with the streaming extractor, falling back to a
+     * full Jsoup parse if it cannot make sense of the page.
+     *
+     * @param html
+     * @return the login form, or null if the page has none
+     */
+    static LoginForm findLoginForm(String html) {
+        LoginForm loginForm = LoginFormExtractor.extract(html, LOGIN_FORM_ID);
+        if (loginForm != null && !loginForm.getInputs().isEmpty()) {
+            return loginForm;
+        }
 
-        return client.newCall(request).execute();
+        Element element = getLoginFormElement(Jsoup.parse(html));
+        return element == null ? null : LoginForm.valueOf(element);
+    }
+
+    private void checkLoggedIn(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected response: " + response + "(2)");
+        }
+//        System.out.println("response="+response.body().string());
+        response.body().close();
+
+        if (!isLoggedIn()) {
+            throw new IOException("Missing gvx cookie.");
+        }
+    }
+
+    /**
+     * Saves the cookies of this session so it can later be restored with
+     * {@link #restoreSession(SessionStore, String)}.
+     *
+     * @param store
+     * @param account
+     * @throws IOException
+     */
+    public void saveSession(SessionStore store, String account) throws IOException {
+        checkNotNull(store);
+        store.save(account, cookieManager.getCookieStore().getCookies());
+    }
+
+    /**
+     * Loads previously saved cookies into this session, skipping the login
+     * flow. Use {@link #validateSession()} to confirm GV still accepts them.
+     *
+     * @param store
+     * @param account
+     * @return true if the restored session is logged in
+     * @throws IOException
+     */
+    public boolean restoreSession(SessionStore store, String account) throws IOException {
+        checkNotNull(store);
+        CookieStore cookieStore = cookieManager.getCookieStore();
+        for (HttpCookie cookie : store.load(account)) {
+            cookieStore.add(cookieUri(cookie), cookie);
+        }
+        return isLoggedIn();
+    }
+
+    /**
+     * Checks with GV that the current session is still accepted, which is
+     * much cheaper than logging in again. A successful check also refreshes
+     * the settings cache, if any.
+     *
+     * @return false if not logged in or GV rejected the session
+     * @throws IOException if the check could not be performed
+     */
+    public boolean validateSession() throws IOException {
+        if (!isLoggedIn()) {
+            return false;
+        }
+
+        Response response = client.newCall(settingsRequest()).execute();
+        ResponseBody body = response.body();
+        try {
+            // an expired session is redirected to the login page
+            Reader reader = body.charStream();
+            if (!response.isSuccessful() || !GVJsonReader.skipPrefix(reader)) {
+                return false;
+            }
+            cacheSettings(GVJsonReader.readSettingsWithoutPrefix(reader));
+            return true;
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Returns when the gvx cookie expires.
+     *
+     * @return milliseconds since the epoch, {@link Long#MAX_VALUE} if it lasts
+     * as long as the session or the cookie store does not record expiry, or 0
+     * if not logged in
+     */
+    long getGvxExpiry() {
+        CookieStore cookieStore = cookieManager.getCookieStore();
+        if (cookieStore instanceof IndexedCookieStore) {
+            return ((IndexedCookieStore) cookieStore).getExpiry("gvx");
+        }
+        if (cookieStore instanceof CompactCookieStore) {
+            return ((CompactCookieStore) cookieStore).getExpiry("gvx");
+        }
+        return isLoggedIn() ? Long.MAX_VALUE : 0;
+    }
+
+    /**
+     * Creates a session on a copy of this session's client, so it shares the
+     * pool's scheduler, metrics and connections, but with an empty cookie
+     * jar of the same kind. Logging in on the fork leaves this session's
+     * calls undisturbed.
+     *
+     * @return
+     */
+    GV fork() {
+        OkHttpClient copy = client.clone();
+        Transport transport = null;
+        Iterator<Interceptor> interceptors = copy.interceptors().iterator();
+        while (interceptors.hasNext()) {
+            Interceptor interceptor = interceptors.next();
+            if (interceptor instanceof TransportInterceptor) {
+                // bound to this session's cookies, the fork adds its own
+                transport = ((TransportInterceptor) interceptor).getTransport();
+                interceptors.remove();
+            }
+        }
+        CookieStore cookieStore = cookieManager.getCookieStore();
+        CookieStore forkStore = cookieStore instanceof CompactCookieStore
+                ? ((CompactCookieStore) cookieStore).newStore() : new IndexedCookieStore();
+        return new GV(copy, new CookieManager(forkStore, CookiePolicy.ACCEPT_ALL), transport);
+    }
+
+    /**
+     * Takes over the cookies of another session, typically a {@link #fork()}
+     * which has just logged in. Calls already sent keep the token they were
+     * sent with; there is no moment at which this session has no gvx cookie.
+     *
+     * @param other
+     */
+    void adoptCookies(GV other) {
+        CookieStore target = cookieManager.getCookieStore();
+        CookieStore source = other.cookieManager.getCookieStore();
+        if (target instanceof IndexedCookieStore && source instanceof IndexedCookieStore) {
+            ((IndexedCookieStore) target).replaceWith((IndexedCookieStore) source);
+            return;
+        }
+        if (target instanceof CompactCookieStore && source instanceof CompactCookieStore) {
+            ((CompactCookieStore) target).replaceWith((CompactCookieStore) source);
+            return;
+        }
+
+        // add first, replacing cookies of the same name, domain and path
+        List<HttpCookie> cookies = source.getCookies();
+        for (HttpCookie cookie : cookies) {
+            target.add(cookieUri(cookie), cookie);
+        }
+        for (HttpCookie cookie : target.getCookies()) {
+            if (!cookies.contains(cookie)) {
+                target.remove(cookieUri(cookie), cookie);
+            }
+        }
+    }
+
+    private static URI cookieUri(HttpCookie cookie) {
+        String domain = cookie.getDomain();
+        if (domain == null) {
+            return null;
+        }
+        if (domain.startsWith(".")) {
+            domain = domain.substring(1);
+        }
+        String path = cookie.getPath() == null ? "/" : cookie.getPath();
+        try {
+            return new URI(cookie.getSecure() ? "https" : "http", domain, path, null);
+        } catch (URISyntaxException e) {
+            return null;
+        }
     }
 
     /**
@@ -148,47 +507,212 @@ public class GV {
      * @throws IOException
      */
     public void logout() throws IOException {
-        Request request = new Request.Builder()
+        Response response = client.newCall(logoutRequest()).execute();
+        checkSuccessful(response);
+    }
+
+    /**
+     * Asynchronous variant of {@link #logout()}.
+     *
+     * @return future that completes once logged out
+     */
+    public ListenableFuture<Void> logoutAsync() {
+        return Futures.transform(enqueue(logoutRequest()), new AsyncFunction<Response, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Response response) throws IOException {
+                checkSuccessful(response);
+                return Futures.immediateFuture(null);
+            }
+        });
+    }
+
+    private static Request logoutRequest() {
+        return new Request.Builder()
                 .url("https://www.google.com/voice/m/logout")
+                .tag(Operation.LOGOUT)
                 .build();
-
-        Response response = client.newCall(request).execute();
-        if (!response.isSuccessful()) {
-            throw new IOException("Unexpected response: " + response);
-        }
     }
 
     /**
      * Fetches GV settings.
      *
+     * If a settings cache is set and holds unexpired settings, they are
+     * returned without a network request.
+     *
      * @return
      * @throws IOException
      */
     public Settings fetchSettings() throws IOException {
-        GVJson json = fetchSettingsJson();
-        return Settings.valueOf(json);
+        SettingsCache cache = settingsCache;
+        if (cache != null) {
+            Settings settings = cache.get();
+            if (settings != null) {
+                return settings;
+            }
+        }
+        return refreshSettings();
     }
 
-    private GVJson fetchSettingsJson() throws IOException {
-        HttpCookie gvx = findCookieByName("gvx");
-        checkState(gvx != null, "Missing gvx cookie.");
+    /**
+     * Asynchronous variant of {@link #fetchSettings()}.
+     *
+     * @return future settings
+     */
+    public ListenableFuture<Settings> fetchSettingsAsync() {
+        SettingsCache cache = settingsCache;
+        if (cache != null) {
+            Settings settings = cache.get();
+            if (settings != null) {
+                return Futures.immediateFuture(settings);
+            }
+        }
+        return refreshSettingsAsync();
+    }
 
-        MediaType contentType = MediaType.parse("text/plain; charset=UTF-8");
-        String content = "{gvx: \"" + gvx.getValue() + "\"}";
-        RequestBody body = RequestBody.create(contentType, content);
+    /**
+     * Fetches GV settings from the network, bypassing and then repopulating
+     * the settings cache.
+     *
+     * Concurrent calls share a single request: while a fetch is in flight,
+     * other callers wait for its result instead of sending their own.
+     *
+     * @return
+     * @throws IOException
+     */
+    public Settings refreshSettings() throws IOException {
+        return getResult(refreshSettingsAsync());
+    }
 
-        Request request = new Request.Builder()
-                .url("https://www.google.com/voice/m/x?m=set&v=" + API_VERSION)
-                .post(body)
-                .build();
+    /**
+     * Asynchronous variant of {@link #refreshSettings()}.
+     *
+     * Cancelling the returned future does not cancel a fetch shared with
+     * other callers.
+     *
+     * @return future settings
+     */
+    public ListenableFuture<Settings> refreshSettingsAsync() {
+        return refreshSettingsAsync(Operation.FETCH_SETTINGS);
+    }
 
-        Response response = client.newCall(request).execute();
+    /**
+     * Variant of {@link #refreshSettingsAsync()} for background polls, which
+     * a {@link RequestScheduler} starts after interactive requests. A poll
+     * shares any fetch in flight, but a caller refreshing while a poll is in
+     * flight sends its own request rather than wait behind the poll.
+     *
+     * @return future settings
+     */
+    ListenableFuture<Settings> pollSettingsAsync() {
+        return refreshSettingsAsync(Operation.POLL_SETTINGS);
+    }
+
+    private ListenableFuture<Settings> refreshSettingsAsync(Operation operation) {
+        Priority priority = Priority.of(operation);
+        while (true) {
+            SettingsFetch inFlight = settingsFetch.get();
+            // a fetch of lower priority may still be queued behind other requests
+            if (inFlight != null && inFlight.priority.compareTo(priority) <= 0) {
+                return Futures.nonCancellationPropagating(inFlight.future);
+            }
+
+            // replaces a lower priority fetch, whose result is then not cached
+            SettingsFetch pending = new SettingsFetch(priority);
+            if (settingsFetch.compareAndSet(inFlight, pending)) {
+                startSettingsFetch(pending, operation);
+                return Futures.nonCancellationPropagating(pending.future);
+            }
+        }
+    }
+
+    private void startSettingsFetch(final SettingsFetch pending, Operation operation) {
+        ListenableFuture<Response> response;
+        try {
+            response = enqueueIdempotent(settingsRequest(operation));
+        } catch (RuntimeException e) {
+            // e.g. not logged in; the slot must not keep a fetch that never completes
+            settingsFetch.compareAndSet(pending, null);
+            pending.future.setException(e);
+            return;
+        }
+
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                Settings settings;
+                try {
+                    settings = readSettings(response);
+                } catch (Exception e) {
+                    onFailure(e);
+                    return;
+                }
+                // a toggle while in flight detaches the fetch, whose result is then stale
+                if (settingsFetch.compareAndSet(pending, null)) {
+                    cacheSettings(settings);
+                }
+                pending.future.set(settings);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                settingsFetch.compareAndSet(pending, null);
+                pending.future.setException(t);
+            }
+        });
+    }
+
+    /**
+     * Reports changes to this session's settings, polled by the shared
+     * default {@link SettingsWatcher}. Use a {@link SettingsWatcher.Builder}
+     * for other intervals or another scheduler.
+     *
+     * @param listener
+     * @return subscription which stops the polling when cancelled
+     */
+    public SettingsWatcher.Subscription watch(SettingsWatcher.Listener listener) {
+        return SettingsWatcher.getDefault().watch(this, listener);
+    }
+
+    /**
+     * Discards any cached settings so that the next fetchSettings() call goes
+     * to the network.
+     */
+    public void invalidateSettings() {
+        SettingsCache cache = settingsCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    private Settings cacheSettings(Settings settings) {
+        SettingsCache cache = settingsCache;
+        if (cache != null) {
+            cache.put(settings);
+        }
+        return settings;
+    }
+
+    private Request settingsRequest() {
+        return settingsRequest(Operation.FETCH_SETTINGS);
+    }
+
+    private Request settingsRequest(Operation operation) {
+        String gvx = findCookieValue("gvx");
+        checkState(gvx != null, "Missing gvx cookie.");
+        return settingsEndpoint.settingsRequest(gvx, operation);
+    }
+
+    private static Settings readSettings(Response response) throws IOException {
         if (!response.isSuccessful()) {
             throw new IOException("Unexpected response: " + response);
         }
 
-        String json = response.body().string().substring(")]}',".length()).trim();
-        return gson.fromJson(json, GVJson.class);
+        ResponseBody body = response.body();
+        try {
+            return GVJsonReader.readSettings(body.charStream());
+        } finally {
+            body.close();
+        }
     }
 
     /**
@@ -204,6 +728,16 @@ public class GV {
         togglePhone(phone, true);
     }
 
+    /**
+     * Asynchronous variant of {@link #enablePhone(Phone)}.
+     *
+     * @param phone
+     * @return future that completes once the phone is enabled
+     */
+    public ListenableFuture<Void> enablePhoneAsync(Phone phone) {
+        return togglePhoneAsync(phone, true);
+    }
+
     /**
      * Disables the specified phone.
      *
@@ -217,46 +751,338 @@ public class GV {
         togglePhone(phone, false);
     }
 
+    /**
+     * Asynchronous variant of {@link #disablePhone(Phone)}.
+     *
+     * @param phone
+     * @return future that completes once the phone is disabled
+     */
+    public ListenableFuture<Void> disablePhoneAsync(Phone phone) {
+        return togglePhoneAsync(phone, false);
+    }
+
+    /**
+     * Enables or disables several phones, packing them into as few requests
+     * as possible (at most {@link #MAX_PHONES_PER_REQUEST} phones each).
+     *
+     * Requests are sent in order; if one fails, the phones of earlier
+     * requests keep their new state.
+     *
+     * @param phones phones mapped to whether they should be enabled
+     * @throws IOException
+     */
+    public void setPhonesEnabled(Map<Phone, Boolean> phones) throws IOException {
+        for (List<Map.Entry<Phone, Boolean>> batch : partition(phones)) {
+            Response response = client.newCall(toggleRequest(batch)).execute();
+            checkSuccessful(response);
+            applyToggles(batch);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #setPhonesEnabled(Map)}.
+     *
+     * @param phones phones mapped to whether they should be enabled
+     * @return future that completes once every phone has been updated
+     */
+    public ListenableFuture<Void> setPhonesEnabledAsync(Map<Phone, Boolean> phones) {
+        return togglePhonesAsync(partition(phones).iterator());
+    }
+
+    /**
+     * Enables exactly the phones with the given ids and disables all others,
+     * sending only the toggles that are needed, batched as in
+     * {@link #setPhonesEnabled(Map)}. When nothing has drifted this costs a
+     * single settings fetch, or nothing at all if the settings are cached.
+     *
+     * @param enabledIds ids of the phones which should be enabled
+     * @return the phones that were toggled
+     * @throws IOException
+     */
+    public ReconcileReport reconcile(Set<Integer> enabledIds) throws IOException {
+        checkNotNull(enabledIds);
+        ReconcileReport report = ReconcileReport.plan(fetchSettings(), enabledIds);
+        setPhonesEnabled(report.getToggles());
+        return report;
+    }
+
+    /**
+     * Asynchronous variant of {@link #reconcile(Set)}.
+     *
+     * @param enabledIds ids of the phones which should be enabled
+     * @return future report of the phones that were toggled
+     */
+    public ListenableFuture<ReconcileReport> reconcileAsync(final Set<Integer> enabledIds) {
+        checkNotNull(enabledIds);
+        return Futures.transform(fetchSettingsAsync(), new AsyncFunction<Settings, ReconcileReport>() {
+            @Override
+            public ListenableFuture<ReconcileReport> apply(Settings settings) {
+                final ReconcileReport report = ReconcileReport.plan(settings, enabledIds);
+                return Futures.transform(setPhonesEnabledAsync(report.getToggles()), new Function<Void, ReconcileReport>() {
+                    @Override
+                    public ReconcileReport apply(Void ignored) {
+                        return report;
+                    }
+                });
+            }
+        });
+    }
+
     private void togglePhone(Phone phone, boolean enable) throws IOException {
         checkNotNull(phone);
+        setPhonesEnabled(ImmutableMap.of(phone, enable));
+    }
 
-        HttpCookie gvx = findCookieByName("gvx");
-        if (gvx == null) {
-            throw new IllegalStateException("Missing gvx cookie.");
-        }
-
-        MediaType contentType = MediaType.parse("text/plain; charset=UTF-8");
-        String content = "{gvx: \"" + gvx.getValue() + "\"}";
-        RequestBody body = RequestBody.create(contentType, content);
-
-        StringBuilder builder = new StringBuilder();
-        builder.append("m=set");
-        builder.append("&fp_id0=").append(phone.getId());
-        builder.append("&fp_name0=").append(phone.getName());
-        builder.append("&fp_num0=").append(phone.getPhoneNumber());
-        builder.append("&fp_type0=").append(phone.getType());
-        builder.append("&fp_pol0=").append(phone.getPolicyBitmask());
-        builder.append("&fp_sen0=").append(phone.isSmsEnabled());
-        builder.append("&fp_red0=").append(phone.getBehaviorOnRedirect());
-        builder.append("&fp_en0=").append(enable);
-        builder.append("&v=").append(API_VERSION);
-        String params = builder.toString();
-
-        Request request = new Request.Builder()
-                .url("https://www.google.com/voice/m/x?" + params)
-                .post(body)
-                .build();
+    private ListenableFuture<Void> togglePhoneAsync(Phone phone, boolean enable) {
+        checkNotNull(phone);
+        return setPhonesEnabledAsync(ImmutableMap.of(phone, enable));
+    }
 
-        Response response = client.newCall(request).execute();
-        if (response.isSuccessful()) {
-            phone.isEnabled = enable;
-        } else {
-            throw new IOException("Unexpected response: " + response);
+    private ListenableFuture<Void> togglePhonesAsync(final Iterator<List<Map.Entry<Phone, Boolean>>> batches) {
+        if (!batches.hasNext()) {
+            return Futures.immediateFuture(null);
         }
+        final List<Map.Entry<Phone, Boolean>> batch = batches.next();
+
+        Request request;
+        try {
+            request = toggleRequest(batch);
+        } catch (IllegalStateException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        return Futures.transform(enqueue(request), new AsyncFunction<Response, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Response response) throws IOException {
+                checkSuccessful(response);
+                applyToggles(batch);
+                return togglePhonesAsync(batches);
+            }
+        });
+    }
+
+    private static List<List<Map.Entry<Phone, Boolean>>> partition(Map<Phone, Boolean> phones) {
+        checkNotNull(phones);
+        ImmutableList<Map.Entry<Phone, Boolean>> entries = ImmutableMap.copyOf(phones).entrySet().asList();
+        return Lists.partition(entries, MAX_PHONES_PER_REQUEST);
     }
 
-    private HttpCookie findCookieByName(String name) {
-        List<HttpCookie> cookies = cookieManager.getCookieStore().getCookies();
+    private void applyToggles(List<Map.Entry<Phone, Boolean>> batch) {
+        // callers arriving from now on must not join a fetch sent before the toggle
+        settingsFetch.set(null);
+
+        SettingsCache cache = settingsCache;
+        if (cache != null) {
+            for (Map.Entry<Phone, Boolean> entry : batch) {
+                cache.update(entry.getKey().getId(), entry.getValue());
+            }
+        }
+    }
+
+    Request toggleRequest(List<Map.Entry<Phone, Boolean>> batch) {
+        String gvx = findCookieValue("gvx");
+        checkState(gvx != null, "Missing gvx cookie.");
+        return settingsEndpoint.toggleRequest(gvx, batch);
+    }
+
+    private static void checkSuccessful(Response response) throws IOException {
+        try {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected response: " + response);
+            }
+        } finally {
+            closeQuietly(response);
+        }
+    }
+
+    /**
+     * Enqueues the request on the client's dispatcher. Cancelling the
+     * returned future cancels the underlying call.
+     *
+     * @param request
+     * @return future response
+     */
+    private ListenableFuture<Response> enqueue(Request request) {
+        return enqueue(client, request);
+    }
+
+    /**
+     * Sends the request through the client's {@link RequestScheduler}, if it
+     * has one.
+     *
+     * @param client
+     * @param request
+     * @return future response
+     */
+    static ListenableFuture<Response> enqueue(OkHttpClient client, Request request) {
+        RequestScheduler scheduler = RequestScheduler.find(client);
+        return scheduler == null ? call(client, request) : scheduler.enqueue(client, request);
+    }
+
+    /**
+     * Variant of {@link #enqueue(OkHttpClient, Request)} which tells when the
+     * request leaves the scheduler's queue and is sent.
+     *
+     * @param client
+     * @param request
+     * @param onSent run once the request is sent, right away if the client
+     * has no scheduler
+     * @return future response
+     */
+    static ListenableFuture<Response> enqueue(OkHttpClient client, Request request, Runnable onSent) {
+        RequestScheduler scheduler = RequestScheduler.find(client);
+        if (scheduler != null) {
+            return scheduler.enqueue(client, request, onSent);
+        }
+        ListenableFuture<Response> future = call(client, request);
+        onSent.run();
+        return future;
+    }
+
+    /**
+     * Tells whether a request failed because its call was cancelled on
+     * purpose, for instance the losing attempt of a hedged read, rather than
+     * because the service failed.
+     *
+     * @param request as seen by an application interceptor
+     * @param e the error the request failed with
+     * @return
+     */
+    static boolean isCanceled(Request request, IOException e) {
+        // OkHttp's own message when a call is cancelled between attempts
+        return CANCELED.contains(request) || "Canceled".equals(e.getMessage());
+    }
+
+    /**
+     * Sends the request right away.
+     *
+     * @param client
+     * @param request
+     * @return future response
+     */
+    static ListenableFuture<Response> call(OkHttpClient client, final Request request) {
+        final Call call = client.newCall(request);
+        final SettableFuture<Response> future = SettableFuture.create();
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    CANCELED.add(request);
+                    call.cancel();
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        if (hasTransport(client)) {
+            // OkHttp never reports the failure of an async call which fails before
+            // reaching its network layer, as a transport's calls do, so these block
+            // on a dispatcher thread instead
+            client.getDispatcher().getExecutorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Response response = call.execute();
+                        if (!future.set(response)) {
+                            closeQuietly(response);
+                        }
+                    } catch (IOException e) {
+                        future.setException(e);
+                    } catch (RuntimeException e) {
+                        future.setException(e);
+                    }
+                }
+            });
+            return future;
+        }
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                future.setException(e);
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                if (!future.set(response)) {
+                    response.body().close();
+                }
+            }
+        });
+        return future;
+    }
+
+    private static boolean hasTransport(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof TransportInterceptor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends an idempotent request, hedging it if a hedge policy is set.
+     *
+     * @param request
+     * @return future response
+     */
+    private ListenableFuture<Response> enqueueIdempotent(Request request) {
+        HedgePolicy policy = hedgePolicy;
+        return policy == null ? enqueue(request) : policy.enqueue(client, request, metrics);
+    }
+
+    /**
+     * Blocking variant of {@link #enqueueIdempotent(Request)}.
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    private Response executeIdempotent(Request request) throws IOException {
+        HedgePolicy policy = hedgePolicy;
+        if (policy == null) {
+            return client.newCall(request).execute();
+        }
+        return getResult(policy.enqueue(client, request, metrics));
+    }
+
+    /**
+     * Blocks until the future completes, cancelling it if interrupted.
+     *
+     * @param future
+     * @return
+     * @throws IOException
+     */
+    static <T> T getResult(ListenableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for response.");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static void closeQuietly(Response response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    HttpCookie findCookieByName(String name) {
+        CookieStore cookieStore = cookieManager.getCookieStore();
+        if (cookieStore instanceof IndexedCookieStore) {
+            return ((IndexedCookieStore) cookieStore).find(name);
+        }
+        if (cookieStore instanceof CompactCookieStore) {
+            return ((CompactCookieStore) cookieStore).find(name);
+        }
+
+        List<HttpCookie> cookies = cookieStore.getCookies();
         for (HttpCookie cookie : cookies) {
             if (name.equals(cookie.getName())) {
                 return cookie;
@@ -265,8 +1091,57 @@ public class GV {
         return null;
     }
 
-    private static Element getLoginFormElement(Document document) {
-        return document.select("form#gaia_loginform").first();
+    /**
+     * Variant of {@link #findCookieByName(String)} for the requests which only
+     * send the cookie's value; a {@link CompactCookieStore} then decodes the
+     * value alone rather than a whole {@link HttpCookie}.
+     *
+     * @param name
+     * @return the value, or null if there is no such cookie
+     */
+    String findCookieValue(String name) {
+        CookieStore cookieStore = cookieManager.getCookieStore();
+        if (cookieStore instanceof CompactCookieStore) {
+            return ((CompactCookieStore) cookieStore).findValue(name);
+        }
+        HttpCookie cookie = findCookieByName(name);
+        return cookie == null ? null : cookie.getValue();
+    }
+
+    /**
+     * Returns the client's interceptor of the given type, adding the provided
+     * one if there is none. Interceptors added to a client before it is cloned
+     * are shared by the clones.
+     *
+     * @param client
+     * @param type
+     * @param interceptor
+     * @return
+     */
+    static <T extends Interceptor> T findOrAddInterceptor(OkHttpClient client, Class<T> type, T interceptor) {
+        for (Interceptor existing : client.interceptors()) {
+            if (type.isInstance(existing)) {
+                return type.cast(existing);
+            }
+        }
+        client.interceptors().add(interceptor);
+        return interceptor;
+    }
+
+    static Element getLoginFormElement(Document document) {
+        return document.select("form#" + LOGIN_FORM_ID).first();
+    }
+
+    /**
+     * Settings fetch shared by the callers which join it.
+     */
+    private static class SettingsFetch {
+        final SettableFuture<Settings> future = SettableFuture.create();
+        final Priority priority;
+
+        SettingsFetch(Priority priority) {
+            this.priority = priority;
+        }
     }
 
 }
@@ -12,24 +12,24 @@ public class GVJson {
     @SerializedName("settings_response")
     public SettingsResponse settingsResponse;
 
-    public class SettingsResponse {
+    public static class SettingsResponse {
         @SerializedName("user_preferences")
         public UserPreferences userPreferences;
     }
 
-    public class UserPreferences {
+    public static class UserPreferences {
         @SerializedName("default_call_settings")
         public DefaultCallSettings defaultCallSettings;
 
         public List<Forward> forwarding;
     }
 
-    public class DefaultCallSettings {
+    public static class DefaultCallSettings {
         @SerializedName("disabled_forwarding_id")
         public List<Integer> disabledForwardingId;
     }
 
-    public class Forward {
+    public static class Forward {
         public int id;
         public String name;
         public int type;
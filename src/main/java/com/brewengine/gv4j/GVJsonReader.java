@@ -0,0 +1,347 @@
+package com.brewengine.gv4j;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Streams a GV settings response into a {@link GVJson}, or straight into
+ * the columns of a {@link Settings} without any intermediate objects. Both
+ * are read by the same parser, so they accept the same responses.
+ *
+ * Only the fields used by {@link Settings#valueOf(GVJson)} are kept, the rest
+ * of the payload is skipped without being materialized.
+ */
+public class GVJsonReader {
+
+    /**
+     * Prefix GV puts in front of JSON responses to prevent XSSI.
+     */
+    static final String XSSI_PREFIX = ")]}',";
+
+    private GVJsonReader() {
+    }
+
+    /**
+     * Reads a settings response, including its XSSI prefix.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    public static GVJson read(Reader reader) throws IOException {
+        checkNotNull(reader);
+        if (!skipPrefix(reader)) {
+            throw new IOException("Missing XSSI prefix.");
+        }
+        return readWithoutPrefix(reader);
+    }
+
+    /**
+     * Reads a settings response whose XSSI prefix has already been consumed
+     * by {@link #skipPrefix(Reader)}.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    static GVJson readWithoutPrefix(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        in.setLenient(true);
+        try {
+            return readJson(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a settings response, including its XSSI prefix, straight into
+     * {@link Settings}.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    static Settings readSettings(Reader reader) throws IOException {
+        checkNotNull(reader);
+        if (!skipPrefix(reader)) {
+            throw new IOException("Missing XSSI prefix.");
+        }
+        return readSettingsWithoutPrefix(reader);
+    }
+
+    /**
+     * Reads a settings response whose XSSI prefix has already been consumed
+     * straight into {@link Settings}.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    static Settings readSettingsWithoutPrefix(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        in.setLenient(true);
+        try {
+            Settings.Builder builder = new Settings.Builder();
+            readSettingsJson(in, builder);
+            return builder.build();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Consumes the XSSI prefix.
+     *
+     * @param reader
+     * @return false if the response does not start with the prefix, such as
+     * when GV answers with a login page instead of JSON
+     * @throws IOException
+     */
+    static boolean skipPrefix(Reader reader) throws IOException {
+        for (int i = 0; i < XSSI_PREFIX.length(); i++) {
+            int c = reader.read();
+            if (c != XSSI_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static GVJson readJson(JsonReader in) throws IOException {
+        final GVJson json = new GVJson();
+        read(in, new Handler() {
+            GVJson.UserPreferences userPreferences;
+
+            @Override
+            void settingsResponse() {
+                json.settingsResponse = new GVJson.SettingsResponse();
+            }
+
+            @Override
+            void userPreferences() {
+                userPreferences = new GVJson.UserPreferences();
+                json.settingsResponse.userPreferences = userPreferences;
+            }
+
+            @Override
+            void defaultCallSettings() {
+                userPreferences.defaultCallSettings = new GVJson.DefaultCallSettings();
+            }
+
+            @Override
+            void disabledForwardingIds() {
+                userPreferences.defaultCallSettings.disabledForwardingId = new ArrayList<Integer>();
+            }
+
+            @Override
+            void disabledForwardingId(int id) {
+                userPreferences.defaultCallSettings.disabledForwardingId.add(id);
+            }
+
+            @Override
+            void forwarding() {
+                userPreferences.forwarding = new ArrayList<GVJson.Forward>();
+            }
+
+            @Override
+            void forward(int id, String name, String phoneNumber, int type, boolean smsEnabled, int policyBitmask,
+                         int behaviorOnRedirect) {
+                GVJson.Forward forward = new GVJson.Forward();
+                forward.id = id;
+                forward.name = name;
+                forward.phoneNumber = phoneNumber;
+                forward.type = type;
+                forward.smsEnabled = smsEnabled;
+                forward.policyBitmask = policyBitmask;
+                forward.behaviorOnRedirect = behaviorOnRedirect;
+                userPreferences.forwarding.add(forward);
+            }
+        });
+        return json;
+    }
+
+    private static void readSettingsJson(JsonReader in, final Settings.Builder builder) throws IOException {
+        read(in, new Handler() {
+            @Override
+            void disabledForwardingId(int id) {
+                builder.addDisabledId(id);
+            }
+
+            @Override
+            void forward(int id, String name, String phoneNumber, int type, boolean smsEnabled, int policyBitmask,
+                         int behaviorOnRedirect) {
+                builder.addPhone(id, name, phoneNumber, type, smsEnabled, policyBitmask, behaviorOnRedirect);
+            }
+        });
+    }
+
+    private static void read(JsonReader in, Handler handler) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+            if ("settings_response".equals(name)) {
+                handler.settingsResponse();
+                readSettingsResponse(in, handler);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readSettingsResponse(JsonReader in, Handler handler) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+            if ("user_preferences".equals(name)) {
+                handler.userPreferences();
+                readUserPreferences(in, handler);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readUserPreferences(JsonReader in, Handler handler) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+            if ("default_call_settings".equals(name)) {
+                handler.defaultCallSettings();
+                readDefaultCallSettings(in, handler);
+            } else if ("forwarding".equals(name)) {
+                handler.forwarding();
+                in.beginArray();
+                while (in.hasNext()) {
+                    if (!skipNull(in)) {
+                        readForward(in, handler);
+                    }
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readDefaultCallSettings(JsonReader in, Handler handler) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+            if ("disabled_forwarding_id".equals(name)) {
+                handler.disabledForwardingIds();
+                in.beginArray();
+                while (in.hasNext()) {
+                    if (!skipNull(in)) {
+                        handler.disabledForwardingId(in.nextInt());
+                    }
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static void readForward(JsonReader in, Handler handler) throws IOException {
+        int id = 0;
+        String forwardName = null;
+        int type = 0;
+        String phoneNumber = null;
+        int behaviorOnRedirect = 0;
+        int policyBitmask = 0;
+        boolean smsEnabled = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+            if ("id".equals(name)) {
+                id = in.nextInt();
+            } else if ("name".equals(name)) {
+                forwardName = in.nextString();
+            } else if ("type".equals(name)) {
+                type = in.nextInt();
+            } else if ("phone_number".equals(name)) {
+                phoneNumber = in.nextString();
+            } else if ("behavior_on_redirect".equals(name)) {
+                behaviorOnRedirect = in.nextInt();
+            } else if ("policy_bitmask".equals(name)) {
+                policyBitmask = in.nextInt();
+            } else if ("sms_enabled".equals(name)) {
+                smsEnabled = in.nextBoolean();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        handler.forward(id, forwardName, phoneNumber, type, smsEnabled, policyBitmask, behaviorOnRedirect);
+    }
+
+    /**
+     * Consumes the next value if it is a JSON null.
+     *
+     * @param in
+     * @return true if a null was consumed
+     * @throws IOException
+     */
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Receives the parts of a settings response as they are read, so that
+     * {@link GVJson} and {@link Settings} are read by the same parser. Null
+     * values are skipped before they reach the handler.
+     */
+    private abstract static class Handler {
+
+        void settingsResponse() {
+        }
+
+        void userPreferences() {
+        }
+
+        void defaultCallSettings() {
+        }
+
+        void disabledForwardingIds() {
+        }
+
+        abstract void disabledForwardingId(int id);
+
+        void forwarding() {
+        }
+
+        abstract void forward(int id, String name, String phoneNumber, int type, boolean smsEnabled,
+                              int policyBitmask, int behaviorOnRedirect);
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.brewengine.gv4j;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.OkHttpClient;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Hands out per-account {@link GV} sessions which share a single connection
+ * pool and dispatcher.
+ *
+ * Each session keeps its own {@link CookieManager}, so accounts stay isolated
+ * while TLS sessions and connections to the Google hosts are reused. Cookies
+ * are held in a {@link CompactCookieStore}, which shares the strings common
+ * to all sessions and drops cookies GV never sends. All
+ * sessions also share a {@link RequestScheduler}, which adapts the number of
+ * requests in flight to what Google accepts and starts interactive requests
+ * ahead of background polls.
+ *
+ * <code>
+ *     GVPool pool = new GVPool.Builder().maxSessions(1000).build();
+ *     GV gv = pool.session("user@gmail.com");
+ * </code>
+ */
+public class GVPool {
+
+    private final OkHttpClient client;
+    private final Transport transport;
+    private final MetricsInterceptor metrics = new MetricsInterceptor();
+    private final RequestScheduler scheduler;
+    private final LoadingCache<String, GV> sessions;
+
+    private GVPool(Builder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+
+        client = new OkHttpClient();
+        client.setDispatcher(dispatcher);
+        client.setConnectionPool(new ConnectionPool(builder.maxIdleConnections, builder.keepAliveMillis));
+        // every GV request goes to the same host, so the per-host limit bounds what the dispatcher runs
+        ConcurrencyLimiter limiter = builder.limiter != null ? builder.limiter
+                : new ConcurrencyLimiter.Builder()
+                        .limits(1, Math.min(builder.maxRequests, builder.maxRequestsPerHost))
+                        .build();
+        RequestScheduler.Builder schedulerBuilder = new RequestScheduler.Builder().limiter(limiter);
+        for (Map.Entry<Priority, Integer> entry : builder.reserved.entrySet()) {
+            schedulerBuilder.reserve(entry.getKey(), entry.getValue());
+        }
+        scheduler = schedulerBuilder.build();
+        // ahead of the metrics, so time spent waiting for a slot is not counted as latency
+        client.interceptors().add(scheduler);
+        client.interceptors().add(metrics);
+        transport = builder.transport;
+
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        if (builder.maxSessions >= 0) {
+            cacheBuilder.maximumSize(builder.maxSessions);
+        }
+        if (builder.sessionIdleMillis > 0) {
+            cacheBuilder.expireAfterAccess(builder.sessionIdleMillis, TimeUnit.MILLISECONDS);
+        }
+        sessions = cacheBuilder.build(new CacheLoader<String, GV>() {
+            @Override
+            public GV load(String account) {
+                return newSession();
+            }
+        });
+    }
+
+    /**
+     * Returns the session for the given account, creating it if necessary.
+     *
+     * @param account
+     * @return
+     */
+    public GV session(String account) {
+        return sessions.getUnchecked(checkNotNull(account));
+    }
+
+    /**
+     * Returns the session for the given account, or null if the pool has no
+     * session for it (never created, removed or evicted).
+     *
+     * @param account
+     * @return
+     */
+    public GV getSession(String account) {
+        return sessions.getIfPresent(checkNotNull(account));
+    }
+
+    /**
+     * Removes the session for the given account from the pool.
+     *
+     * @param account
+     */
+    public void removeSession(String account) {
+        sessions.invalidate(checkNotNull(account));
+    }
+
+    public Set<String> getAccounts() {
+        return sessions.asMap().keySet();
+    }
+
+    public long size() {
+        return sessions.size();
+    }
+
+    /**
+     * Opens connections to the Google hosts in the shared pool ahead of the
+     * first sessions' requests. Size the pool with
+     * {@link Builder#connectionPool(int, long, TimeUnit)} so that it keeps
+     * at least this many idle connections per host.
+     *
+     * @param connectionsPerHost
+     * @return report of how long warm-up took
+     * @throws IOException
+     */
+    public WarmUpReport warmUp(int connectionsPerHost) throws IOException {
+        return GV.getResult(warmUpAsync(connectionsPerHost));
+    }
+
+    /**
+     * Asynchronous variant of {@link #warmUp(int)}.
+     *
+     * @param connectionsPerHost
+     * @return future report
+     */
+    public ListenableFuture<WarmUpReport> warmUpAsync(int connectionsPerHost) {
+        return WarmUpReport.warmUp(client, GV.WARM_UP_URLS, connectionsPerHost);
+    }
+
+    /**
+     * Returns the metrics recorded for the requests of all sessions.
+     *
+     * @return
+     */
+    public MetricsInterceptor getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the limiter shared by all sessions, which exposes the current
+     * limit.
+     *
+     * @return
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return scheduler.getConcurrencyLimiter();
+    }
+
+    /**
+     * Returns the scheduler shared by all sessions, which exposes the queue
+     * depth and queue wait of each {@link Priority}.
+     *
+     * @return
+     */
+    public RequestScheduler getRequestScheduler() {
+        return scheduler;
+    }
+
+    OkHttpClient getClient() {
+        return client;
+    }
+
+    private GV newSession() {
+        return new GV(client.clone(), new CookieManager(new CompactCookieStore(), null), transport);
+    }
+
+    public static class Builder {
+
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 16;
+        private int maxIdleConnections = 5;
+        private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+        private long maxSessions = -1;
+        private long sessionIdleMillis;
+        private Transport transport;
+        private ConcurrencyLimiter limiter;
+        private final Map<Priority, Integer> reserved = new EnumMap<Priority, Integer>(Priority.class);
+
+        /**
+         * Maximum number of concurrent requests across all sessions, which
+         * bounds the total number of open connections.
+         *
+         * @param maxRequests
+         * @return
+         */
+        public Builder maxRequests(int maxRequests) {
+            checkArgument(maxRequests > 0, "maxRequests must be positive");
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent requests to a single host across all
+         * sessions.
+         *
+         * @param maxRequestsPerHost
+         * @return
+         */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            checkArgument(maxRequestsPerHost > 0, "maxRequestsPerHost must be positive");
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Maximum number of idle connections kept in the shared pool, and how
+         * long each is kept alive.
+         *
+         * @param maxIdleConnections
+         * @param keepAlive
+         * @param unit
+         * @return
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            checkArgument(maxIdleConnections >= 0, "maxIdleConnections must not be negative");
+            checkArgument(keepAlive > 0, "keepAlive must be positive");
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * Maximum number of sessions held by the pool; least recently used
+         * sessions are evicted beyond this.
+         *
+         * @param maxSessions
+         * @return
+         */
+        public Builder maxSessions(long maxSessions) {
+            checkArgument(maxSessions >= 0, "maxSessions must not be negative");
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Evicts sessions that have not been requested from the pool for the
+         * given duration.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder sessionIdleTimeout(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "duration must be positive");
+            this.sessionIdleMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sends the requests of every session through the given transport
+         * instead of OkHttp's network layer. Transport calls run on the
+         * dispatcher's threads but outside its queue, so the concurrency
+         * limiter rather than the dispatcher limits bounds them; the
+         * connection pool settings only apply to OkHttp.
+         *
+         * @param transport
+         * @return
+         */
+        public Builder transport(Transport transport) {
+            this.transport = checkNotNull(transport);
+            return this;
+        }
+
+        /**
+         * Limiter shared by all sessions; by default one which adapts
+         * between 1 and the lower of {@link #maxRequests(int)} and
+         * {@link #maxRequestsPerHost(int)} requests in flight. Since GV
+         * sends nearly all of its requests to one host, its maximum should
+         * not exceed either, or admitted requests queue again in the
+         * dispatcher, first come first served, holding their slots.
+         *
+         * @param limiter
+         * @return
+         */
+        public Builder concurrencyLimiter(ConcurrencyLimiter limiter) {
+            this.limiter = checkNotNull(limiter);
+            return this;
+        }
+
+        /**
+         * Slots lower priority classes must leave free for the given class.
+         *
+         * @param priority
+         * @param slots
+         * @return
+         * @see RequestScheduler.Builder#reserve(Priority, int)
+         */
+        public Builder reserve(Priority priority, int slots) {
+            checkArgument(slots >= 0, "slots must not be negative");
+            reserved.put(checkNotNull(priority), slots);
+            return this;
+        }
+
+        public GVPool build() {
+            return new GVPool(this);
+        }
+    }
+
+}
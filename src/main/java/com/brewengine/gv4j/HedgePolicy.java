@@ -0,0 +1,234 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Hedges idempotent reads: if a request has not been answered after a delay,
+ * the same request is sent again and whichever response arrives first is
+ * used, the other call being cancelled.
+ *
+ * The delay runs from when the request is sent: a request still waiting in
+ * a {@link RequestScheduler}'s queue is not hedged, so hedges do not add to
+ * the load while the scheduler is saturated.
+ *
+ * While the first request is in flight its connection is busy, so over
+ * HTTP/1.1 the hedge is sent on another pooled or new connection. This cuts
+ * the tail latency caused by a single slow connection at the cost of a few
+ * extra requests.
+ *
+ * A policy may be shared by many sessions; its counters then cover all of
+ * them.
+ */
+public class HedgePolicy {
+
+    /**
+     * Minimum number of recorded latencies before a percentile is trusted.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gv4j-hedge-%d").build());
+
+    private final long delayNanos;
+    private final double percentile;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    HedgePolicy(long delayNanos, double percentile, ScheduledExecutorService scheduler) {
+        this.delayNanos = delayNanos;
+        this.percentile = percentile;
+        this.scheduler = checkNotNull(scheduler);
+    }
+
+    /**
+     * Hedges requests that take longer than a fixed delay.
+     *
+     * @param delay
+     * @param unit
+     * @return
+     */
+    public static HedgePolicy fixedDelay(long delay, TimeUnit unit) {
+        checkArgument(delay >= 0, "delay must not be negative");
+        return new HedgePolicy(unit.toNanos(delay), 0, SCHEDULER);
+    }
+
+    /**
+     * Hedges requests that take longer than the given latency percentile of
+     * their operation, as recorded by the session's metrics. Until enough
+     * latencies have been recorded the fallback delay is used instead.
+     *
+     * @param percentile e.g. 95 to hedge the slowest 5% of requests
+     * @param fallbackDelay
+     * @param unit
+     * @return
+     */
+    public static HedgePolicy percentile(double percentile, long fallbackDelay, TimeUnit unit) {
+        checkArgument(percentile > 0 && percentile < 100, "percentile must be between 0 and 100");
+        checkArgument(fallbackDelay >= 0, "fallbackDelay must not be negative");
+        return new HedgePolicy(unit.toNanos(fallbackDelay), percentile, SCHEDULER);
+    }
+
+    /**
+     * @return number of hedge requests sent
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return number of hedge requests which answered before the original
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    long delayNanos(MetricsInterceptor metrics, Request request) {
+        if (percentile > 0 && metrics != null) {
+            LatencyHistogram.Snapshot latency = metrics.snapshot(Operation.of(request.tag())).getLatency();
+            if (latency.getCount() >= MIN_SAMPLES) {
+                return latency.getPercentile(percentile, TimeUnit.NANOSECONDS);
+            }
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Enqueues the request, hedging it if it is not answered in time.
+     *
+     * The returned future fails only once every attempt has failed.
+     * Cancelling it cancels every attempt.
+     *
+     * @param client
+     * @param request an idempotent request
+     * @param metrics source of latency percentiles, may be null
+     * @return future response
+     */
+    ListenableFuture<Response> enqueue(final OkHttpClient client, final Request request, MetricsInterceptor metrics) {
+        final SettableFuture<Response> result = SettableFuture.create();
+        final AtomicInteger inFlight = new AtomicInteger(1);
+        final AtomicBoolean answered = new AtomicBoolean();
+
+        final AtomicReference<ListenableFuture<Response>> hedge = new AtomicReference<ListenableFuture<Response>>();
+        final AtomicReference<ScheduledFuture<?>> timer = new AtomicReference<ScheduledFuture<?>>();
+        final long delayNanos = delayNanos(metrics, request);
+
+        final Runnable sendHedge = new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone()) {
+                    return;
+                }
+                inFlight.incrementAndGet();
+                hedgeCount.incrementAndGet();
+                // a request of its own, so the two attempts can be told apart
+                hedge.set(GV.enqueue(client, request.newBuilder().build()));
+                complete(hedge.get(), true, result, answered, inFlight, null);
+                if (result.isDone()) {
+                    hedge.get().cancel(true);
+                }
+            }
+        };
+        final ListenableFuture<Response> primary = GV.enqueue(client, request, new Runnable() {
+            @Override
+            public void run() {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    timer.set(scheduler.schedule(sendHedge, delayNanos, TimeUnit.NANOSECONDS));
+                } catch (RejectedExecutionException e) {
+                    // the scheduler is shut down; the primary still completes the call
+                    return;
+                }
+                if (result.isDone()) {
+                    timer.get().cancel(false);
+                }
+            }
+        });
+
+        complete(primary, false, result, answered, inFlight, timer);
+
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                // cancelling an attempt that already delivered the result has no effect
+                cancel(timer);
+                primary.cancel(true);
+                ListenableFuture<Response> attempt = hedge.get();
+                if (attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        return result;
+    }
+
+    private void complete(ListenableFuture<Response> attempt, final boolean isHedge,
+                          final SettableFuture<Response> result, final AtomicBoolean answered,
+                          final AtomicInteger inFlight,
+                          final AtomicReference<ScheduledFuture<?>> timer) {
+        Futures.addCallback(attempt, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                // count the win before the caller can observe the result
+                if (answered.compareAndSet(false, true)) {
+                    if (isHedge) {
+                        hedgeWinCount.incrementAndGet();
+                    }
+                    if (result.set(response)) {
+                        return;
+                    }
+                }
+                GV.closeQuietly(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // the primary failing before the hedge is sent ends the call
+                if (inFlight.decrementAndGet() == 0) {
+                    if (timer != null) {
+                        cancel(timer);
+                    }
+                    result.setException(t);
+                }
+            }
+        });
+    }
+
+    private static void cancel(AtomicReference<ScheduledFuture<?>> timer) {
+        ScheduledFuture<?> scheduled = timer.get();
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{hedges=" + hedgeCount + ", wins=" + hedgeWinCount + "}";
+    }
+
+}
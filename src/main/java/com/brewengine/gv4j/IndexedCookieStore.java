@@ -0,0 +1,278 @@
+package com.brewengine.gv4j;
+
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link CookieStore} indexed by cookie name, so that looking up a single
+ * cookie such as 'gvx' does not depend on the number of cookies held.
+ *
+ * Lookups are lock-free; modifications are serialized and replace the small
+ * per-name arrays they touch. Expired cookies are dropped as they are found.
+ *
+ * The store records when each cookie expires, and its whole content can be
+ * swapped at once with {@link #replaceWith(IndexedCookieStore)}.
+ */
+public class IndexedCookieStore implements CookieStore {
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private volatile ConcurrentMap<String, Entry[]> cookies = new ConcurrentHashMap<String, Entry[]>();
+
+    /**
+     * Finds an unexpired cookie by name, regardless of its domain.
+     *
+     * @param name
+     * @return the cookie, or null if there is none
+     */
+    public HttpCookie find(String name) {
+        return find(name, null);
+    }
+
+    /**
+     * Finds an unexpired cookie by name and domain.
+     *
+     * @param name
+     * @param domain cookie domain, compared ignoring case, or null for any
+     * @return the cookie, or null if there is none
+     */
+    public HttpCookie find(String name, String domain) {
+        Entry entry = findEntry(name, domain);
+        return entry == null ? null : entry.cookie;
+    }
+
+    /**
+     * Returns when an unexpired cookie expires, as recorded when it was
+     * added.
+     *
+     * @param name
+     * @return milliseconds since the epoch, {@link Long#MAX_VALUE} for a
+     * cookie that lasts as long as the session, or 0 if there is no such
+     * cookie
+     */
+    public long getExpiry(String name) {
+        Entry entry = findEntry(name, null);
+        return entry == null ? 0 : entry.expiresAt;
+    }
+
+    /**
+     * Replaces the content of this store with a copy of the other's in one
+     * step: a reader sees either all of the old cookies or all of the new.
+     *
+     * @param other
+     */
+    public synchronized void replaceWith(IndexedCookieStore other) {
+        // the per-name arrays are never modified, so they can be shared
+        cookies = new ConcurrentHashMap<String, Entry[]>(checkNotNull(other).cookies);
+    }
+
+    private Entry findEntry(String name, String domain) {
+        Entry[] entries = cookies.get(checkNotNull(name));
+        if (entries == null) {
+            return null;
+        }
+        for (Entry entry : entries) {
+            HttpCookie cookie = entry.cookie;
+            if (cookie.hasExpired()) {
+                remove(entry.uri, cookie);
+            } else if (domain == null || domain.equalsIgnoreCase(cookie.getDomain())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void add(URI uri, HttpCookie cookie) {
+        checkNotNull(cookie);
+
+        Entry[] entries = cookies.get(cookie.getName());
+        List<Entry> updated = new ArrayList<Entry>(entries == null ? 1 : entries.length + 1);
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (!entry.cookie.equals(cookie) && !entry.cookie.hasExpired()) {
+                    updated.add(entry);
+                }
+            }
+        }
+        // a max-age of 0 is a request to delete the cookie
+        long maxAge = cookie.getMaxAge();
+        if (maxAge != 0) {
+            long expiresAt = maxAge < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + maxAge * 1000;
+            updated.add(new Entry(uri == null ? null : hostUri(uri), cookie, expiresAt));
+        }
+        put(cookie.getName(), updated);
+    }
+
+    @Override
+    public List<HttpCookie> get(URI uri) {
+        String host = checkNotNull(uri).getHost();
+        List<HttpCookie> matches = new ArrayList<HttpCookie>();
+        if (host == null) {
+            return matches;
+        }
+
+        for (Entry[] entries : cookies.values()) {
+            for (Entry entry : entries) {
+                HttpCookie cookie = entry.cookie;
+                if (cookie.hasExpired()) {
+                    remove(entry.uri, cookie);
+                } else if (cookie.getDomain() != null ? domainMatches(cookie, host)
+                        : entry.uri != null && host.equalsIgnoreCase(entry.uri.getHost())) {
+                    matches.add(cookie);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns all unexpired cookies. Cookies which expire are copies whose
+     * max-age is the time they have left, so that, unlike the JDK's store, a
+     * saved cookie does not outlive the one it was saved from.
+     *
+     * @return
+     */
+    @Override
+    public List<HttpCookie> getCookies() {
+        long now = System.currentTimeMillis();
+        List<HttpCookie> all = new ArrayList<HttpCookie>();
+        for (Entry[] entries : cookies.values()) {
+            for (Entry entry : entries) {
+                if (entry.cookie.hasExpired()) {
+                    remove(entry.uri, entry.cookie);
+                } else {
+                    all.add(entry.expiresAt == Long.MAX_VALUE ? entry.cookie : remaining(entry, now));
+                }
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public List<URI> getURIs() {
+        Set<URI> uris = new LinkedHashSet<URI>();
+        for (Entry[] entries : cookies.values()) {
+            for (Entry entry : entries) {
+                if (entry.uri != null) {
+                    uris.add(entry.uri);
+                }
+            }
+        }
+        return new ArrayList<URI>(uris);
+    }
+
+    @Override
+    public synchronized boolean remove(URI uri, HttpCookie cookie) {
+        checkNotNull(cookie);
+
+        Entry[] entries = cookies.get(cookie.getName());
+        if (entries == null) {
+            return false;
+        }
+
+        List<Entry> updated = new ArrayList<Entry>(entries.length);
+        for (Entry entry : entries) {
+            if (!entry.cookie.equals(cookie)) {
+                updated.add(entry);
+            }
+        }
+        if (updated.size() == entries.length) {
+            return false;
+        }
+        put(cookie.getName(), updated);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll() {
+        boolean empty = cookies.isEmpty();
+        cookies.clear();
+        return !empty;
+    }
+
+    private void put(String name, List<Entry> entries) {
+        if (entries.isEmpty()) {
+            cookies.remove(name);
+        } else {
+            cookies.put(name, entries.toArray(EMPTY));
+        }
+    }
+
+    /**
+     * Matches the way the JDK's own cookie store does: Netscape style tail
+     * matching for version 0 cookies, RFC 2965 rules otherwise.
+     *
+     * @param cookie
+     * @param host
+     * @return
+     */
+    static boolean domainMatches(HttpCookie cookie, String host) {
+        return domainMatches(cookie.getDomain(), cookie.getVersion(), host);
+    }
+
+    static boolean domainMatches(String domain, int version, String host) {
+        if (version != 0) {
+            return HttpCookie.domainMatches(domain, host);
+        }
+
+        if (domain.startsWith(".")) {
+            domain = domain.substring(1);
+        }
+        int diff = host.length() - domain.length();
+        if (diff == 0) {
+            return host.equalsIgnoreCase(domain);
+        }
+        return diff > 0
+                && host.charAt(diff - 1) == '.'
+                && host.regionMatches(true, diff, domain, 0, domain.length());
+    }
+
+    private static HttpCookie remaining(Entry entry, long now) {
+        HttpCookie cookie = entry.cookie;
+        HttpCookie copy = new HttpCookie(cookie.getName(), cookie.getValue());
+        copy.setVersion(cookie.getVersion());
+        copy.setDomain(cookie.getDomain());
+        copy.setPath(cookie.getPath());
+        copy.setSecure(cookie.getSecure());
+        copy.setHttpOnly(cookie.isHttpOnly());
+        copy.setComment(cookie.getComment());
+        copy.setCommentURL(cookie.getCommentURL());
+        copy.setDiscard(cookie.getDiscard());
+        copy.setPortlist(cookie.getPortlist());
+        // rounded up, so an unexpired entry never yields an expired cookie
+        copy.setMaxAge(Math.max(1, (entry.expiresAt - now + 999) / 1000));
+        return copy;
+    }
+
+    private static URI hostUri(URI uri) {
+        try {
+            return new URI(uri.getScheme(), uri.getAuthority(), null, null, null);
+        } catch (URISyntaxException e) {
+            return uri;
+        }
+    }
+
+    private static class Entry {
+        final URI uri;
+        final HttpCookie cookie;
+        final long expiresAt;
+
+        Entry(URI uri, HttpCookie cookie, long expiresAt) {
+            this.uri = uri;
+            this.cookie = cookie;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -1,4 +1,8 @@
-package com.squareup.okhttp;
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
 
 import java.io.IOException;
 
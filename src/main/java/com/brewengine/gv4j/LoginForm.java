@@ -0,0 +1,94 @@
+package com.brewengine.gv4j;
+
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The action and input fields of a login form, in document order.
+ */
+public class LoginForm {
+
+    private final String action;
+    private final List<Input> inputs;
+
+    LoginForm(String action, List<Input> inputs) {
+        this.action = checkNotNull(action);
+        this.inputs = Collections.unmodifiableList(new ArrayList<Input>(inputs));
+    }
+
+    /**
+     * Converts a form parsed by Jsoup.
+     *
+     * @param form
+     * @return
+     */
+    public static LoginForm valueOf(Element form) {
+        checkNotNull(form);
+
+        List<Input> inputs = new ArrayList<Input>();
+        for (Element input : form.getElementsByTag("input")) {
+            inputs.add(new Input(input.attr("name"), input.attr("value")));
+        }
+        return new LoginForm(form.attr("action"), inputs);
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public List<Input> getInputs() {
+        return inputs;
+    }
+
+    @Override
+    public String toString() {
+        return "LoginForm{action=" + action + ", inputs=" + inputs + "}";
+    }
+
+    public static class Input {
+
+        private final String name;
+        private final String value;
+
+        Input(String name, String value) {
+            this.name = checkNotNull(name);
+            this.value = checkNotNull(value);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Input)) {
+                return false;
+            }
+            Input input = (Input) o;
+            return name.equals(input.name) && value.equals(input.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + value;
+        }
+    }
+
+}
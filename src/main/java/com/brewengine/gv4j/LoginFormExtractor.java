@@ -0,0 +1,223 @@
+package com.brewengine.gv4j;
+
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Extracts a form from an HTML page with a single forward scan, without
+ * building a DOM.
+ *
+ * Only what the login flow needs is understood: tags and their attributes,
+ * comments, and script/style contents (which are skipped). Scanning stops at
+ * the end of the requested form. Pages this does not handle should fall back
+ * to a full parse with Jsoup.
+ */
+public class LoginFormExtractor {
+
+    private final String html;
+    private int pos;
+
+    private LoginFormExtractor(String html) {
+        this.html = html;
+    }
+
+    /**
+     * Finds the form with the given id.
+     *
+     * @param html
+     * @param formId
+     * @return the form, or null if the page has no such form
+     */
+    public static LoginForm extract(String html, String formId) {
+        checkNotNull(html);
+        checkNotNull(formId);
+        return new LoginFormExtractor(html).extract(formId);
+    }
+
+    private LoginForm extract(String formId) {
+        Map<String, String> attributes = new HashMap<String, String>();
+
+        String action = null;
+        List<LoginForm.Input> inputs = null;
+
+        int length = html.length();
+        while (pos < length) {
+            int lt = html.indexOf('<', pos);
+            if (lt < 0) {
+                break;
+            }
+
+            if (html.startsWith("<!--", lt)) {
+                int end = html.indexOf("-->", lt + 4);
+                pos = end < 0 ? length : end + 3;
+                continue;
+            }
+
+            boolean closing = lt + 1 < length && html.charAt(lt + 1) == '/';
+            int nameStart = closing ? lt + 2 : lt + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < length && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart) {
+                // not a tag, e.g. a '<' in text
+                pos = lt + 1;
+                continue;
+            }
+            pos = nameEnd;
+
+            boolean form = isTag(nameStart, nameEnd, "form");
+            if (closing) {
+                skipTag(null);
+                if (form && inputs != null) {
+                    return new LoginForm(action, inputs);
+                }
+                continue;
+            }
+
+            boolean input = inputs != null && isTag(nameStart, nameEnd, "input");
+            if (form && inputs == null || input) {
+                attributes.clear();
+                skipTag(attributes);
+            } else {
+                skipTag(null);
+            }
+
+            if (form && inputs == null) {
+                if (formId.equals(attributes.get("id"))) {
+                    action = valueOrEmpty(attributes.get("action"));
+                    inputs = new ArrayList<LoginForm.Input>();
+                }
+            } else if (input) {
+                inputs.add(new LoginForm.Input(valueOrEmpty(attributes.get("name")), valueOrEmpty(attributes.get("value"))));
+            } else if (isTag(nameStart, nameEnd, "script") || isTag(nameStart, nameEnd, "style")) {
+                skipRawText(html.substring(nameStart, nameEnd));
+            }
+        }
+
+        // unterminated form, take what we found
+        return inputs == null ? null : new LoginForm(action, inputs);
+    }
+
+    private boolean isTag(int start, int end, String name) {
+        return end - start == name.length() && html.regionMatches(true, start, name, 0, name.length());
+    }
+
+    /**
+     * Advances past the end of the current tag, collecting its attributes if
+     * a map is provided.
+     *
+     * @param attributes lower-cased attribute names mapped to unescaped
+     *                   values, or null to skip attributes
+     */
+    private void skipTag(Map<String, String> attributes) {
+        int length = html.length();
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '>') {
+                pos++;
+                return;
+            }
+            if (Character.isWhitespace(c) || c == '/') {
+                pos++;
+                continue;
+            }
+
+            int nameStart = pos;
+            while (pos < length) {
+                c = html.charAt(pos);
+                if (c == '=' || c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    break;
+                }
+                pos++;
+            }
+            int nameEnd = pos;
+            if (nameEnd == nameStart) {
+                // stray '=' without a name
+                pos++;
+                continue;
+            }
+
+            skipWhitespace();
+            String value = "";
+            if (pos < length && html.charAt(pos) == '=') {
+                pos++;
+                skipWhitespace();
+                value = readAttributeValue();
+            }
+
+            if (attributes != null) {
+                String name = html.substring(nameStart, nameEnd).toLowerCase(Locale.ENGLISH);
+                attributes.put(name, value.indexOf('&') < 0 ? value : Parser.unescapeEntities(value, true));
+            }
+        }
+    }
+
+    private String readAttributeValue() {
+        int length = html.length();
+        if (pos >= length) {
+            return "";
+        }
+
+        char quote = html.charAt(pos);
+        if (quote == '"' || quote == '\'') {
+            int end = html.indexOf(quote, pos + 1);
+            if (end < 0) {
+                end = length;
+            }
+            String value = html.substring(pos + 1, end);
+            pos = Math.min(end + 1, length);
+            return value;
+        }
+
+        int start = pos;
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '>' || Character.isWhitespace(c)) {
+                break;
+            }
+            pos++;
+        }
+        return html.substring(start, pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < html.length() && Character.isWhitespace(html.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Skips the contents of a script or style element up to its end tag.
+     *
+     * @param name
+     */
+    private void skipRawText(String name) {
+        int length = html.length();
+        while (pos < length) {
+            int lt = html.indexOf("</", pos);
+            if (lt < 0) {
+                pos = length;
+                return;
+            }
+            pos = lt + 2;
+            if (html.regionMatches(true, pos, name, 0, name.length())) {
+                pos += name.length();
+                skipTag(null);
+                return;
+            }
+        }
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+}
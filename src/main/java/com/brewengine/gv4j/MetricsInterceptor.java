@@ -0,0 +1,194 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records request counts, errors, bytes transferred and latency for each
+ * {@link Operation}.
+ *
+ * Recording is lock-free and does not buffer bodies, so the interceptor is
+ * installed on every {@link GV} client. Latency is measured up to the
+ * response headers, after redirects; received bytes are counted as the body
+ * is read. Read the numbers with {@link #snapshot()}.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private final Map<Operation, Counters> counters = new EnumMap<Operation, Counters>(Operation.class);
+
+    public MetricsInterceptor() {
+        for (Operation operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Counters counters = this.counters.get(Operation.of(request.tag()));
+        counters.requests.incrementAndGet();
+
+        RequestBody requestBody = request.body();
+        if (requestBody != null && requestBody.contentLength() > 0) {
+            counters.bytesSent.addAndGet(requestBody.contentLength());
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            counters.latency.record(System.nanoTime() - start);
+            counters.errors.incrementAndGet();
+            throw e;
+        }
+        counters.latency.record(System.nanoTime() - start);
+
+        if (!response.isSuccessful()) {
+            counters.errors.incrementAndGet();
+        }
+        if (response.body() == null) {
+            return response;
+        }
+        return response.newBuilder()
+                .body(new CountingResponseBody(response.body(), counters.bytesReceived))
+                .build();
+    }
+
+    /**
+     * Returns the current metrics of every operation.
+     *
+     * @return
+     */
+    public Map<Operation, Snapshot> snapshot() {
+        Map<Operation, Snapshot> snapshots = new EnumMap<Operation, Snapshot>(Operation.class);
+        for (Map.Entry<Operation, Counters> entry : counters.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    /**
+     * Returns the current metrics of one operation.
+     *
+     * @param operation
+     * @return
+     */
+    public Snapshot snapshot(Operation operation) {
+        return counters.get(checkNotNull(operation)).snapshot();
+    }
+
+    /**
+     * Point-in-time metrics of an operation.
+     */
+    public static class Snapshot {
+
+        private final long requestCount;
+        private final long errorCount;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final LatencyHistogram.Snapshot latency;
+
+        Snapshot(long requestCount, long errorCount, long bytesSent, long bytesReceived, LatencyHistogram.Snapshot latency) {
+            this.requestCount = requestCount;
+            this.errorCount = errorCount;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.latency = latency;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * @return number of requests that failed with an exception or an
+         * unsuccessful response code
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{requests=" + requestCount + ", errors=" + errorCount
+                    + ", sent=" + bytesSent + ", received=" + bytesReceived + ", latency=" + latency + "}";
+        }
+    }
+
+    private static class Counters {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Snapshot snapshot() {
+            return new Snapshot(requests.get(), errors.get(), bytesSent.get(), bytesReceived.get(), latency.snapshot());
+        }
+    }
+
+    private static class CountingResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        CountingResponseBody(ResponseBody delegate, final AtomicLong bytesReceived) throws IOException {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        bytesReceived.addAndGet(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+}
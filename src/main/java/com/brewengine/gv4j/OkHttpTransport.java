@@ -0,0 +1,73 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link Transport} over an {@link OkHttpClient}, whose connection pool and
+ * protocol settings are used by every session sharing the transport.
+ *
+ * Sessions created without a transport already use OkHttp directly; this
+ * implementation serves callers of the transport itself and sessions that
+ * should share a client configured elsewhere.
+ */
+public class OkHttpTransport implements Transport {
+
+    private final OkHttpClient client;
+
+    public OkHttpTransport() {
+        this(new OkHttpClient());
+    }
+
+    /**
+     * @param client used for its connection pool and settings; its cookie
+     *               handler and interceptors are not used
+     */
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = checkNotNull(client).clone();
+        this.client.interceptors().clear();
+        this.client.setCookieHandler(null);
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request, CookieHandler cookieHandler) throws IOException {
+        checkNotNull(request);
+        checkNotNull(cookieHandler);
+
+        RequestBody body = null;
+        if (request.getBody() != null) {
+            MediaType contentType = request.getContentType() == null ? null : MediaType.parse(request.getContentType());
+            body = RequestBody.create(contentType, request.getBody());
+        }
+        Request.Builder builder = new Request.Builder()
+                .url(request.getUrl())
+                .method(request.getMethod(), body)
+                .tag(request.getOperation());
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                builder.addHeader(header.getKey(), value);
+            }
+        }
+
+        // clones share the connection pool; only the cookie jar differs per call
+        OkHttpClient session = client.clone();
+        session.setCookieHandler(cookieHandler);
+
+        Response response = session.newCall(builder.build()).execute();
+        byte[] bytes = response.body().bytes();
+        String contentType = response.header("Content-Type");
+        return new TransportResponse(response.code(), response.message(), response.request().urlString(),
+                response.headers().toMultimap(), contentType, bytes);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.brewengine.gv4j;
+
+/**
+ * Logical GV operations, used to tag requests so that they can be measured
+ * and scheduled by what they do rather than by URL.
+ */
+public enum Operation {
+
+    /**
+     * Fetch of the login page.
+     */
+    LOGIN_PAGE,
+
+    /**
+     * 1st login request, which sends the username.
+     */
+    LOGIN_USERNAME,
+
+    /**
+     * 2nd login request, which sends the password.
+     */
+    LOGIN_PASSWORD,
+
+    /**
+     * Fetch of the GV settings.
+     */
+    FETCH_SETTINGS,
+
+    /**
+     * Fetch of the GV settings by a background poll, such as those of
+     * {@link SettingsWatcher}.
+     */
+    POLL_SETTINGS,
+
+    /**
+     * Enabling or disabling of phones.
+     */
+    TOGGLE_PHONES,
+
+    LOGOUT,
+
+    /**
+     * Requests which only open pooled connections ahead of use.
+     */
+    WARM_UP,
+
+    /**
+     * Requests not made by GV4J.
+     */
+    OTHER;
+
+    /**
+     * Determines the operation a request was tagged with.
+     *
+     * @param tag
+     * @return
+     */
+    static Operation of(Object tag) {
+        return tag instanceof Operation ? (Operation) tag : OTHER;
+    }
+
+}
@@ -1,15 +1,32 @@
 package com.brewengine.gv4j;
 
+/**
+ * Immutable view of a GV forwarding phone as it was when its {@link Settings}
+ * were fetched. Toggling a phone does not change this object; fetch the
+ * settings again to observe the new state.
+ */
 public class Phone {
 
-    int id;
-    String name;
-    String phoneNumber;
-    int type;
-    boolean isEnabled;
-    boolean isSmsEnabled;
-    int policyBitmask;
-    int behaviorOnRedirect;
+    final int id;
+    final String name;
+    final String phoneNumber;
+    final int type;
+    final boolean isEnabled;
+    final boolean isSmsEnabled;
+    final int policyBitmask;
+    final int behaviorOnRedirect;
+
+    Phone(int id, String name, String phoneNumber, int type, boolean isEnabled, boolean isSmsEnabled,
+          int policyBitmask, int behaviorOnRedirect) {
+        this.id = id;
+        this.name = name;
+        this.phoneNumber = phoneNumber;
+        this.type = type;
+        this.isEnabled = isEnabled;
+        this.isSmsEnabled = isSmsEnabled;
+        this.policyBitmask = policyBitmask;
+        this.behaviorOnRedirect = behaviorOnRedirect;
+    }
 
     public int getId() {
         return id;
@@ -43,6 +60,13 @@ public class Phone {
         return behaviorOnRedirect;
     }
 
+    Phone withEnabled(boolean enabled) {
+        if (enabled == isEnabled) {
+            return this;
+        }
+        return new Phone(id, name, phoneNumber, type, enabled, isSmsEnabled, policyBitmask, behaviorOnRedirect);
+    }
+
     @Override
     public String toString() {
         return "Phone{id=" + id + ", name=" + name + ", number=" + phoneNumber + ", enabled=" + isEnabled + "}";
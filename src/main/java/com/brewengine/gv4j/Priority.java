@@ -0,0 +1,54 @@
+package com.brewengine.gv4j;
+
+/**
+ * Classes of requests scheduled by a {@link RequestScheduler}, from the
+ * highest priority to the lowest.
+ */
+public enum Priority {
+
+    /**
+     * Enabling or disabling of phones.
+     */
+    INTERACTIVE_WRITE,
+
+    /**
+     * Fetches of the settings on behalf of a caller, and requests not made
+     * by GV4J.
+     */
+    INTERACTIVE_READ,
+
+    /**
+     * Login and logout requests.
+     */
+    LOGIN,
+
+    /**
+     * Background polls and connection warm-up.
+     */
+    BACKGROUND_READ;
+
+    /**
+     * Determines the priority of a request from the operation it was tagged
+     * with.
+     *
+     * @param tag
+     * @return
+     */
+    static Priority of(Object tag) {
+        switch (Operation.of(tag)) {
+            case TOGGLE_PHONES:
+                return INTERACTIVE_WRITE;
+            case LOGIN_PAGE:
+            case LOGIN_USERNAME:
+            case LOGIN_PASSWORD:
+            case LOGOUT:
+                return LOGIN;
+            case POLL_SETTINGS:
+            case WARM_UP:
+                return BACKGROUND_READ;
+            default:
+                return INTERACTIVE_READ;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Outcome of {@link GV#reconcile(Set)}: the phones that had to be toggled to
+ * reach the desired state.
+ */
+public class ReconcileReport {
+
+    private final ImmutableMap<Phone, Boolean> toggles;
+    private final List<Phone> enabled;
+    private final List<Phone> disabled;
+    private final Set<Integer> unknownIds;
+
+    private ReconcileReport(ImmutableMap<Phone, Boolean> toggles, List<Phone> enabled, List<Phone> disabled,
+                            Set<Integer> unknownIds) {
+        this.toggles = toggles;
+        this.enabled = enabled;
+        this.disabled = disabled;
+        this.unknownIds = unknownIds;
+    }
+
+    /**
+     * Works out the toggles needed to go from the current settings to having
+     * exactly the given phones enabled.
+     *
+     * @param settings current settings
+     * @param enabledIds ids of the phones which should be enabled
+     * @return
+     */
+    static ReconcileReport plan(Settings settings, Set<Integer> enabledIds) {
+        checkNotNull(settings);
+        checkNotNull(enabledIds);
+
+        ImmutableMap.Builder<Phone, Boolean> toggles = ImmutableMap.builder();
+        ImmutableList.Builder<Phone> enabled = ImmutableList.builder();
+        ImmutableList.Builder<Phone> disabled = ImmutableList.builder();
+        for (Phone phone : settings.getPhones()) {
+            boolean enable = enabledIds.contains(phone.getId());
+            if (phone.isEnabled() != enable) {
+                toggles.put(phone, enable);
+                (enable ? enabled : disabled).add(phone.withEnabled(enable));
+            }
+        }
+
+        ImmutableSortedSet.Builder<Integer> unknownIds = ImmutableSortedSet.naturalOrder();
+        for (Integer id : enabledIds) {
+            if (settings.getPhone(checkNotNull(id)) == null) {
+                unknownIds.add(id);
+            }
+        }
+
+        return new ReconcileReport(toggles.build(), enabled.build(), disabled.build(), unknownIds.build());
+    }
+
+    Map<Phone, Boolean> getToggles() {
+        return toggles;
+    }
+
+    /**
+     * @return phones that were enabled, in their new state
+     */
+    public List<Phone> getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return phones that were disabled, in their new state
+     */
+    public List<Phone> getDisabled() {
+        return disabled;
+    }
+
+    /**
+     * @return desired ids that match no phone of the account
+     */
+    public Set<Integer> getUnknownIds() {
+        return unknownIds;
+    }
+
+    /**
+     * @return number of toggle requests sent
+     */
+    public int getRequestCount() {
+        return (toggles.size() + GV.MAX_PHONES_PER_REQUEST - 1) / GV.MAX_PHONES_PER_REQUEST;
+    }
+
+    /**
+     * @return true if the account already matched the desired state
+     */
+    public boolean isEmpty() {
+        return toggles.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ReconcileReport{enabled=" + enabled + ", disabled=" + disabled + ", unknownIds=" + unknownIds + "}";
+    }
+}
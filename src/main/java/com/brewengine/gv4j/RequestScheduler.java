@@ -0,0 +1,338 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Runnables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides which request gets the next free slot of a
+ * {@link ConcurrencyLimiter}, by {@link Priority}.
+ *
+ * Waiting requests are started highest class first, and in order within a
+ * class. Each class can reserve slots: a request only starts if it leaves the
+ * slots reserved by the classes above it free, so a flood of background polls
+ * cannot take the capacity interactive toggles need.
+ *
+ * Asynchronous {@link GV} calls wait in the scheduler before they are handed
+ * to OkHttp's dispatcher, so no thread is held while they wait and the
+ * dispatcher's own first-come queue does not undo the priorities. Blocking
+ * calls wait in the calling thread. The scheduler must be the first
+ * interceptor of the client; {@link GVPool} installs one shared by all of its
+ * sessions.
+ */
+public class RequestScheduler implements Interceptor {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final ConcurrencyLimiter limiter;
+    private final int[] headroom = new int[PRIORITIES.length];
+    private final Map<Priority, Queue> queues = new EnumMap<Priority, Queue>(Priority.class);
+
+    /**
+     * Requests admitted by {@link #enqueue(OkHttpClient, Request)} which have
+     * not reached the interceptor yet. Requests have identity equality.
+     */
+    private final Multiset<Request> admitted = ConcurrentHashMultiset.create();
+
+    private RequestScheduler(Builder builder) {
+        limiter = builder.limiter != null ? builder.limiter
+                : new ConcurrencyLimiter.Builder().limits(builder.capacity, builder.capacity).build();
+        int reserved = 0;
+        for (Priority priority : PRIORITIES) {
+            headroom[priority.ordinal()] = reserved;
+            reserved += builder.reserved[priority.ordinal()];
+            queues.put(priority, new Queue());
+        }
+    }
+
+    /**
+     * Returns the scheduler installed on the client, if any.
+     *
+     * @param client
+     * @return
+     */
+    static RequestScheduler find(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof RequestScheduler) {
+                return (RequestScheduler) interceptor;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Priority priority = Priority.of(request.tag());
+        if (!admitted.remove(request)) {
+            acquire(priority);
+        }
+
+        Queue queue = queues.get(priority);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            // a call cancelled on purpose says nothing about the service
+            release(queue, GV.isCanceled(request, e) ? null : Boolean.TRUE);
+            throw e;
+        } catch (RuntimeException e) {
+            release(queue, true);
+            throw e;
+        }
+        release(queue, limiter.isDropped(response.code(), System.nanoTime() - start));
+        return response;
+    }
+
+    /**
+     * Sends the request once it is given a slot.
+     *
+     * Cancelling the returned future while the request waits removes it
+     * from the queue.
+     *
+     * @param client
+     * @param request
+     * @return future response
+     */
+    ListenableFuture<Response> enqueue(OkHttpClient client, Request request) {
+        return enqueue(client, request, Runnables.doNothing());
+    }
+
+    /**
+     * @param client
+     * @param request
+     * @param onAdmitted run once the request is given a slot and sent
+     * @return future response
+     * @see #enqueue(OkHttpClient, Request)
+     */
+    ListenableFuture<Response> enqueue(final OkHttpClient client, final Request request, final Runnable onAdmitted) {
+        checkNotNull(onAdmitted);
+        return Futures.transform(admit(Priority.of(request.tag())), new AsyncFunction<Void, Response>() {
+            @Override
+            public ListenableFuture<Response> apply(Void input) {
+                admitted.add(request);
+                ListenableFuture<Response> response = GV.call(client, request);
+                onAdmitted.run();
+                return response;
+            }
+        });
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @param priority
+     * @return number of requests of the class waiting for a slot
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        return queues.get(checkNotNull(priority)).waiters.size();
+    }
+
+    /**
+     * @return number of requests waiting for a slot
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Queue queue : queues.values()) {
+            depth += queue.waiters.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @param priority
+     * @return number of requests of the class in flight
+     */
+    public synchronized int getInFlight(Priority priority) {
+        return queues.get(checkNotNull(priority)).inFlight;
+    }
+
+    /**
+     * @param priority
+     * @return time requests of the class waited for a slot
+     */
+    public LatencyHistogram.Snapshot getQueueWait(Priority priority) {
+        return queues.get(checkNotNull(priority)).wait.snapshot();
+    }
+
+    /**
+     * Waits in the calling thread for a slot.
+     */
+    private void acquire(Priority priority) throws InterruptedIOException {
+        ListenableFuture<Void> admission = admit(priority);
+        try {
+            admission.get();
+        } catch (InterruptedException e) {
+            if (!admission.cancel(false)) {
+                // admitted in the meantime
+                release(queues.get(priority), null);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a request slot.");
+        } catch (ExecutionException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private ListenableFuture<Void> admit(Priority priority) {
+        final Queue queue = queues.get(priority);
+        final Waiter waiter = new Waiter(queue);
+        synchronized (this) {
+            queue.waiters.add(waiter);
+        }
+        waiter.future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (waiter.future.isCancelled()) {
+                    synchronized (RequestScheduler.this) {
+                        queue.waiters.remove(waiter);
+                    }
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        drain();
+        return waiter.future;
+    }
+
+    /**
+     * Frees a slot and starts whichever requests fit now.
+     *
+     * @param queue
+     * @param dropped outcome of the request, or null if it was not sent
+     */
+    private void release(Queue queue, Boolean dropped) {
+        if (dropped == null) {
+            limiter.release();
+        } else {
+            limiter.release(dropped);
+        }
+        synchronized (this) {
+            queue.inFlight--;
+        }
+        drain();
+    }
+
+    private void drain() {
+        List<Waiter> started = new ArrayList<Waiter>();
+        synchronized (this) {
+            for (Priority priority : PRIORITIES) {
+                Queue queue = queues.get(priority);
+                while (!queue.waiters.isEmpty() && limiter.tryAcquire(headroom[priority.ordinal()])) {
+                    queue.inFlight++;
+                    started.add(queue.waiters.poll());
+                }
+                if (!queue.waiters.isEmpty()) {
+                    // lower classes need at least as much headroom
+                    break;
+                }
+            }
+        }
+
+        // complete outside the lock, as callers continue on this thread
+        for (Waiter waiter : started) {
+            waiter.queue.wait.record(System.nanoTime() - waiter.start);
+            if (!waiter.future.set(null)) {
+                // cancelled while being admitted
+                release(waiter.queue, null);
+            }
+        }
+    }
+
+    private static class Queue {
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+        final LatencyHistogram wait = new LatencyHistogram();
+        int inFlight;
+    }
+
+    private static class Waiter {
+        final Queue queue;
+        final SettableFuture<Void> future = SettableFuture.create();
+        final long start = System.nanoTime();
+
+        Waiter(Queue queue) {
+            this.queue = queue;
+        }
+    }
+
+    public static class Builder {
+
+        private int capacity = 64;
+        private ConcurrencyLimiter limiter;
+        private final int[] reserved = new int[PRIORITIES.length];
+
+        public Builder() {
+            reserved[Priority.INTERACTIVE_WRITE.ordinal()] = 4;
+            reserved[Priority.INTERACTIVE_READ.ordinal()] = 4;
+            reserved[Priority.LOGIN.ordinal()] = 2;
+        }
+
+        /**
+         * Fixed number of requests in flight.
+         *
+         * @param capacity
+         * @return
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity > 0, "capacity must be positive");
+            this.capacity = capacity;
+            this.limiter = null;
+            return this;
+        }
+
+        /**
+         * Adapts the number of requests in flight with the given limiter,
+         * which must not also be installed as an interceptor.
+         *
+         * @param limiter
+         * @return
+         */
+        public Builder limiter(ConcurrencyLimiter limiter) {
+            this.limiter = checkNotNull(limiter);
+            return this;
+        }
+
+        /**
+         * Slots lower classes must leave free for the class. By default 4
+         * for each interactive class, 2 for logins and none for background
+         * reads.
+         *
+         * @param priority
+         * @param slots
+         * @return
+         */
+        public Builder reserve(Priority priority, int slots) {
+            checkArgument(slots >= 0, "slots must not be negative");
+            reserved[checkNotNull(priority).ordinal()] = slots;
+            return this;
+        }
+
+        public RequestScheduler build() {
+            return new RequestScheduler(this);
+        }
+    }
+
+}
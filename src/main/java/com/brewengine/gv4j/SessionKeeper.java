@@ -0,0 +1,324 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps sessions logged in by logging in again in the background before
+ * their gvx cookie expires, so callers never run into an expired session and
+ * never wait on the login flow.
+ *
+ * Each refresh is scheduled a random time within the jitter window before
+ * the refresh-ahead mark, so sessions that logged in together do not all
+ * refresh at once. The login runs on a {@link GV#fork() fork} of the session
+ * with its own cookie jar; the session keeps using its current token until
+ * the new one is ready, then takes over the new cookies in one step. Login
+ * requests are tagged as such, so a {@link RequestScheduler} keeps them from
+ * delaying interactive requests.
+ *
+ * Expiry is only known for sessions using an {@link IndexedCookieStore} or a
+ * {@link CompactCookieStore}; other sessions, and gvx cookies without an
+ * expiry, are assumed to last the configured session lifetime from the last
+ * refresh. A new token which expires within the refresh window is refreshed
+ * after half of its lifetime, and no sooner than the retry delay.
+ *
+ * <code>
+ *     SessionKeeper keeper = new SessionKeeper.Builder()
+ *             .refreshAhead(30, TimeUnit.MINUTES)
+ *             .jitter(10, TimeUnit.MINUTES)
+ *             .build();
+ *     SessionKeeper.Subscription subscription = keeper.keep(gv, username, password, listener);
+ * </code>
+ */
+public class SessionKeeper {
+
+    /**
+     * Fraction of each retry delay that is randomized.
+     */
+    static final double JITTER = 0.2;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gv4j-keeper-%d").build());
+
+    private final ScheduledExecutorService scheduler;
+    private final long refreshAheadMillis;
+    private final long jitterMillis;
+    private final long retryDelayMillis;
+    private final long sessionLifetimeMillis;
+    private final Random random = new Random();
+
+    private SessionKeeper(Builder builder) {
+        scheduler = builder.scheduler;
+        refreshAheadMillis = builder.refreshAheadMillis;
+        jitterMillis = builder.jitterMillis;
+        retryDelayMillis = builder.retryDelayMillis;
+        sessionLifetimeMillis = builder.sessionLifetimeMillis;
+    }
+
+    /**
+     * Starts keeping the session logged in. A session which is not logged in,
+     * or whose token is within the refresh window already, is refreshed right
+     * away.
+     *
+     * @param gv
+     * @param username
+     * @param password
+     * @param listener
+     * @return subscription which stops the refreshes when cancelled
+     */
+    public Subscription keep(GV gv, String username, String password, Listener listener) {
+        Subscription subscription = new Subscription(checkNotNull(gv), checkNotNull(username),
+                checkNotNull(password), checkNotNull(listener));
+        subscription.schedule(delayMillis(gv.getGvxExpiry(), System.currentTimeMillis()));
+        return subscription;
+    }
+
+    /**
+     * Returns the jittered delay until a token expiring at the given time
+     * should be refreshed.
+     *
+     * @param expiry as returned by {@link GV#getGvxExpiry()}
+     * @param now
+     * @return
+     */
+    long delayMillis(long expiry, long now) {
+        if (expiry <= 0) {
+            return 0;
+        }
+        long deadline = expiry == Long.MAX_VALUE ? now + sessionLifetimeMillis : expiry;
+        long refreshAt = deadline - refreshAheadMillis - (long) (random.nextDouble() * jitterMillis);
+        return Math.max(0, refreshAt - now);
+    }
+
+    /**
+     * Returns the delay until the next refresh after a successful one, which
+     * unlike {@link #delayMillis(long, long)} is never shorter than the retry
+     * delay or half of the time the token has left.
+     *
+     * @param expiry as returned by {@link GV#getGvxExpiry()}
+     * @param now
+     * @return
+     */
+    long delayAfterRefreshMillis(long expiry, long now) {
+        long minimum = retryDelayMillis;
+        if (expiry > now && expiry != Long.MAX_VALUE) {
+            minimum = Math.max(minimum, (expiry - now) / 2);
+        }
+        return Math.max(minimum, delayMillis(expiry, now));
+    }
+
+    public interface Listener {
+        /**
+         * Called from the login threads once the session has taken over a
+         * new token, for instance to save it with
+         * {@link GV#saveSession(SessionStore, String)}.
+         */
+        void onRefresh();
+
+        /**
+         * Called when a refresh fails; it is retried after the retry delay.
+         * The session keeps its current token meanwhile.
+         *
+         * @param t
+         */
+        void onFailure(Throwable t);
+    }
+
+    public class Subscription {
+
+        private final GV gv;
+        private final String username;
+        private final String password;
+        private final Listener listener;
+
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> next;
+        private volatile int refreshCount;
+
+        Subscription(GV gv, String username, String password, Listener listener) {
+            this.gv = gv;
+            this.username = username;
+            this.password = password;
+            this.listener = listener;
+        }
+
+        /**
+         * Stops refreshing. A login already in flight completes, but its
+         * token is not taken over.
+         */
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> future = next;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return number of tokens taken over so far
+         */
+        public int getRefreshCount() {
+            return refreshCount;
+        }
+
+        private void schedule(long delayMillis) {
+            if (cancelled) {
+                return;
+            }
+            next = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            if (cancelled) {
+                next.cancel(false);
+            }
+        }
+
+        private void refresh() {
+            if (cancelled) {
+                return;
+            }
+            final GV fork;
+            ListenableFuture<Void> future;
+            try {
+                fork = gv.fork();
+                future = fork.loginAsync(username, password);
+            } catch (RuntimeException e) {
+                onFailure(e);
+                return;
+            }
+
+            Futures.addCallback(future, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    if (cancelled) {
+                        return;
+                    }
+                    gv.adoptCookies(fork);
+                    refreshCount++;
+                    try {
+                        listener.onRefresh();
+                    } catch (RuntimeException ignored) {
+                        // must not stop the refreshes
+                    }
+                    // a short-lived token must not make the keeper log in over and over
+                    schedule(delayAfterRefreshMillis(gv.getGvxExpiry(), System.currentTimeMillis()));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    Subscription.this.onFailure(t);
+                }
+            });
+        }
+
+        private void onFailure(Throwable t) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                listener.onFailure(t);
+            } catch (RuntimeException ignored) {
+                // must not stop the refreshes
+            }
+            double jitter = 1 - JITTER / 2 + random.nextDouble() * JITTER;
+            schedule((long) (retryDelayMillis * jitter));
+        }
+    }
+
+    public static class Builder {
+
+        private ScheduledExecutorService scheduler = SCHEDULER;
+        private long refreshAheadMillis = TimeUnit.MINUTES.toMillis(30);
+        private long jitterMillis = TimeUnit.MINUTES.toMillis(10);
+        private long retryDelayMillis = TimeUnit.MINUTES.toMillis(1);
+        private long sessionLifetimeMillis = TimeUnit.HOURS.toMillis(12);
+
+        /**
+         * How long before the token expires to refresh it at the latest.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder refreshAhead(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0, "duration must not be negative");
+            this.refreshAheadMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Window before the refresh-ahead mark over which refreshes are
+         * spread at random.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder jitter(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0, "duration must not be negative");
+            this.jitterMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Delay before a failed refresh is retried.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder retryDelay(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "duration must be positive");
+            this.retryDelayMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Lifetime assumed for tokens whose expiry is not known.
+         *
+         * @param duration
+         * @param unit
+         * @return
+         */
+        public Builder sessionLifetime(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "duration must be positive");
+            this.sessionLifetimeMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Scheduler which triggers the refreshes; by default a single daemon
+         * thread shared by all keepers.
+         *
+         * @param scheduler
+         * @return
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = checkNotNull(scheduler);
+            return this;
+        }
+
+        public SessionKeeper build() {
+            return new SessionKeeper(this);
+        }
+    }
+
+}
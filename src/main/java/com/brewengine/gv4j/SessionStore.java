@@ -0,0 +1,42 @@
+package com.brewengine.gv4j;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.List;
+
+/**
+ * Persists the cookies of GV sessions so that a session can be restored
+ * without going through the login flow again.
+ *
+ * @see GV#saveSession(SessionStore, String)
+ * @see GV#restoreSession(SessionStore, String)
+ */
+public interface SessionStore {
+
+    /**
+     * Replaces the saved cookies of the given account.
+     *
+     * @param account
+     * @param cookies
+     * @throws IOException
+     */
+    void save(String account, List<HttpCookie> cookies) throws IOException;
+
+    /**
+     * Loads the saved, unexpired cookies of the given account.
+     *
+     * @param account
+     * @return saved cookies, empty if there is no saved session
+     * @throws IOException
+     */
+    List<HttpCookie> load(String account) throws IOException;
+
+    /**
+     * Deletes the saved cookies of the given account, if any.
+     *
+     * @param account
+     * @throws IOException
+     */
+    void delete(String account) throws IOException;
+
+}
@@ -1,42 +1,340 @@
 package com.brewengine.gv4j;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import com.google.common.collect.ImmutableList;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Immutable snapshot of the GV settings, safe to share between threads and
+ * callers.
+ *
+ * Phones are kept in columns (int arrays, and bit sets for the enabled and
+ * SMS flags) and {@link Phone} objects are only created when asked for, so
+ * checking a single phone with {@link #isPhoneEnabled(int)} allocates
+ * nothing. Phones are indexed by id (a sorted int array searched in
+ * O(log n)) and by phone number, and two snapshots can be compared with
+ * {@link #diff(Settings)}.
+ */
 public class Settings {
 
-    private List<Phone> phones = new ArrayList<Phone>();
-    private List<Phone> unmodifiablePhones = Collections.unmodifiableList(phones);
+    private final int size;
+
+    // columns, in the order GV lists the phones
+    private final int[] ids;
+    private final String[] names;
+    private final String[] phoneNumbers;
+    private final int[] types;
+    private final int[] policyBitmasks;
+    private final int[] behaviorsOnRedirect;
+    private final BitSet enabled;
+    private final BitSet smsEnabled;
+
+    /** Distinct phone ids in ascending order. */
+    private final int[] sortedIds;
+
+    /** Column index of the first phone with each of {@link #sortedIds}. */
+    private final int[] sortedIndexes;
+
+    /**
+     * Phones created so far. Racing threads may each create a phone, which
+     * is harmless since phones are immutable.
+     */
+    private final Phone[] phones;
+
+    private final List<Phone> phoneList = new PhoneList();
+
+    private volatile Map<String, Integer> indexesByNumber;
 
+    private Settings(int size, int[] ids, String[] names, String[] phoneNumbers, int[] types, int[] policyBitmasks,
+                     int[] behaviorsOnRedirect, BitSet enabled, BitSet smsEnabled, int[] sortedIds, int[] sortedIndexes) {
+        this.size = size;
+        this.ids = ids;
+        this.names = names;
+        this.phoneNumbers = phoneNumbers;
+        this.types = types;
+        this.policyBitmasks = policyBitmasks;
+        this.behaviorsOnRedirect = behaviorsOnRedirect;
+        this.enabled = enabled;
+        this.smsEnabled = smsEnabled;
+        this.sortedIds = sortedIds;
+        this.sortedIndexes = sortedIndexes;
+        this.phones = new Phone[size];
+    }
+
+    /**
+     * @return phones in the order GV lists them, created as they are accessed
+     */
     public List<Phone> getPhones() {
-        return unmodifiablePhones;
+        return phoneList;
+    }
+
+    public int getPhoneCount() {
+        return size;
+    }
+
+    /**
+     * @param id
+     * @return the phone with the given id, or null if there is none
+     */
+    public Phone getPhone(int id) {
+        int index = indexOf(id);
+        return index < 0 ? null : phone(index);
+    }
+
+    /**
+     * Checks a single phone without creating any objects.
+     *
+     * @param id
+     * @return true if the phone with the given id exists and is enabled
+     */
+    public boolean isPhoneEnabled(int id) {
+        int index = indexOf(id);
+        return index >= 0 && enabled.get(index);
+    }
+
+    /**
+     * @param phoneNumber
+     * @return the phone with the given number, or null if there is none
+     */
+    public Phone getPhoneByNumber(String phoneNumber) {
+        checkNotNull(phoneNumber);
+        Map<String, Integer> indexes = indexesByNumber;
+        if (indexes == null) {
+            indexes = new HashMap<String, Integer>();
+            for (int i = size - 1; i >= 0; i--) {
+                // the first phone with a number wins
+                if (phoneNumbers[i] != null) {
+                    indexes.put(phoneNumbers[i], i);
+                }
+            }
+            indexesByNumber = indexes;
+        }
+        Integer index = indexes.get(phoneNumber);
+        return index == null ? null : phone(index);
+    }
+
+    /**
+     * Compares these settings with newer ones in a single pass over the
+     * phone ids. Only the phones that changed are created.
+     *
+     * @param newer
+     * @return phones added, removed, enabled and disabled since these settings
+     */
+    public SettingsDiff diff(Settings newer) {
+        checkNotNull(newer);
+
+        ImmutableList.Builder<Phone> added = ImmutableList.builder();
+        ImmutableList.Builder<Phone> removed = ImmutableList.builder();
+        ImmutableList.Builder<Phone> enabled = ImmutableList.builder();
+        ImmutableList.Builder<Phone> disabled = ImmutableList.builder();
+
+        int[] newerIds = newer.sortedIds;
+        int i = 0;
+        int j = 0;
+        while (i < sortedIds.length || j < newerIds.length) {
+            if (j == newerIds.length || (i < sortedIds.length && sortedIds[i] < newerIds[j])) {
+                removed.add(phone(sortedIndexes[i++]));
+            } else if (i == sortedIds.length || newerIds[j] < sortedIds[i]) {
+                added.add(newer.phone(newer.sortedIndexes[j++]));
+            } else {
+                int index = newer.sortedIndexes[j];
+                boolean isEnabled = newer.enabled.get(index);
+                if (isEnabled != this.enabled.get(sortedIndexes[i])) {
+                    (isEnabled ? enabled : disabled).add(newer.phone(index));
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return new SettingsDiff(added.build(), removed.build(), enabled.build(), disabled.build());
+    }
+
+    /**
+     * Returns a copy of these settings with the given phone enabled or
+     * disabled, or these settings if nothing changes. The copy shares every
+     * column but the enabled flags.
+     *
+     * @param id
+     * @param enabled
+     * @return
+     */
+    Settings withPhoneEnabled(int id, boolean enabled) {
+        int index = indexOf(id);
+        if (index < 0 || this.enabled.get(index) == enabled) {
+            return this;
+        }
+
+        BitSet copy = (BitSet) this.enabled.clone();
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                copy.set(i, enabled);
+            }
+        }
+        return new Settings(size, ids, names, phoneNumbers, types, policyBitmasks, behaviorsOnRedirect,
+                copy, smsEnabled, sortedIds, sortedIndexes);
     }
 
     public static Settings valueOf(GVJson json) {
         checkNotNull(json);
 
-        List<Integer> disabledList = json.settingsResponse.userPreferences.defaultCallSettings.disabledForwardingId;
-
-        Settings settings = new Settings();
+        Builder builder = new Builder();
+        List<Integer> disabled = json.settingsResponse.userPreferences.defaultCallSettings.disabledForwardingId;
+        if (disabled != null) {
+            for (Integer id : disabled) {
+                if (id != null) {
+                    builder.addDisabledId(id);
+                }
+            }
+        }
         for (GVJson.Forward forward : json.settingsResponse.userPreferences.forwarding) {
-            Phone phone = new Phone();
+            builder.addPhone(forward.id, forward.name, forward.phoneNumber, forward.type, forward.smsEnabled,
+                    forward.policyBitmask, forward.behaviorOnRedirect);
+        }
+        return builder.build();
+    }
+
+    private int indexOf(int id) {
+        int position = Arrays.binarySearch(sortedIds, id);
+        return position < 0 ? -1 : sortedIndexes[position];
+    }
 
-            phone.id = forward.id;
-            phone.name = forward.name;
-            phone.type = forward.type;
-            phone.phoneNumber = forward.phoneNumber;
-            phone.isEnabled = disabledList == null || !disabledList.contains(phone.id);
-            phone.isSmsEnabled = forward.smsEnabled;
-            phone.policyBitmask = forward.policyBitmask;
-            phone.behaviorOnRedirect = forward.behaviorOnRedirect;
+    private Phone phone(int index) {
+        Phone phone = phones[index];
+        if (phone == null) {
+            phone = new Phone(ids[index], names[index], phoneNumbers[index], types[index], enabled.get(index),
+                    smsEnabled.get(index), policyBitmasks[index], behaviorsOnRedirect[index]);
+            phones[index] = phone;
+        }
+        return phone;
+    }
 
-            settings.phones.add(phone);
+    @Override
+    public String toString() {
+        return "Settings{phones=" + phoneList + "}";
+    }
+
+    private class PhoneList extends AbstractList<Phone> implements RandomAccess {
+        @Override
+        public Phone get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+            }
+            return phone(index);
         }
 
-        return settings;
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Collects the phones and disabled ids of a settings response, in any
+     * order, straight into columns.
+     */
+    static class Builder {
+
+        private int size;
+        private int[] ids = new int[8];
+        private String[] names = new String[8];
+        private String[] phoneNumbers = new String[8];
+        private int[] types = new int[8];
+        private int[] policyBitmasks = new int[8];
+        private int[] behaviorsOnRedirect = new int[8];
+        private final BitSet disabledIndexes = new BitSet();
+        private final BitSet smsEnabled = new BitSet();
+
+        private int disabledCount;
+        private int[] disabledIds = new int[8];
+
+        Builder addPhone(int id, String name, String phoneNumber, int type, boolean isSmsEnabled, int policyBitmask,
+                         int behaviorOnRedirect) {
+            return addPhone(id, name, phoneNumber, type, true, isSmsEnabled, policyBitmask, behaviorOnRedirect);
+        }
+
+        /**
+         * Adds a phone whose state is already known rather than given by
+         * the disabled ids.
+         */
+        Builder addPhone(int id, String name, String phoneNumber, int type, boolean isEnabled, boolean isSmsEnabled,
+                         int policyBitmask, int behaviorOnRedirect) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+                types = Arrays.copyOf(types, capacity);
+                policyBitmasks = Arrays.copyOf(policyBitmasks, capacity);
+                behaviorsOnRedirect = Arrays.copyOf(behaviorsOnRedirect, capacity);
+            }
+            ids[size] = id;
+            names[size] = name;
+            phoneNumbers[size] = phoneNumber;
+            types[size] = type;
+            policyBitmasks[size] = policyBitmask;
+            behaviorsOnRedirect[size] = behaviorOnRedirect;
+            disabledIndexes.set(size, !isEnabled);
+            smsEnabled.set(size, isSmsEnabled);
+            size++;
+            return this;
+        }
+
+        Builder addDisabledId(int id) {
+            if (disabledCount == disabledIds.length) {
+                disabledIds = Arrays.copyOf(disabledIds, disabledCount * 2);
+            }
+            disabledIds[disabledCount++] = id;
+            return this;
+        }
+
+        Settings build() {
+            int[] disabled = Arrays.copyOf(disabledIds, disabledCount);
+            Arrays.sort(disabled);
+            BitSet enabled = new BitSet(size);
+            for (int i = 0; i < size; i++) {
+                enabled.set(i, !disabledIndexes.get(i) && Arrays.binarySearch(disabled, ids[i]) < 0);
+            }
+
+            // ids in the high bits, column indexes in the low bits: sorting
+            // orders by id, then by position, without boxing
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] sortedIds = new int[size];
+            int[] sortedIndexes = new int[size];
+            int count = 0;
+            for (long key : keys) {
+                int id = (int) (key >> 32);
+                if (count == 0 || sortedIds[count - 1] != id) {
+                    sortedIds[count] = id;
+                    sortedIndexes[count] = (int) key;
+                    count++;
+                }
+            }
+
+            return new Settings(size,
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(names, size),
+                    Arrays.copyOf(phoneNumbers, size),
+                    Arrays.copyOf(types, size),
+                    Arrays.copyOf(policyBitmasks, size),
+                    Arrays.copyOf(behaviorsOnRedirect, size),
+                    enabled,
+                    (BitSet) smsEnabled.clone(),
+                    Arrays.copyOf(sortedIds, count),
+                    Arrays.copyOf(sortedIndexes, count));
+        }
     }
 
 }
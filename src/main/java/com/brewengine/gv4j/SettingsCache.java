@@ -0,0 +1,93 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holds the most recently fetched {@link Settings} of a single GV session
+ * for a fixed time-to-live.
+ *
+ * Phone toggles are written through to the cached settings rather than
+ * invalidating them, so a toggle does not cost an extra fetch. The cached
+ * snapshot is replaced, never modified, so settings already handed out do
+ * not change.
+ */
+public class SettingsCache {
+
+    private final long ttlNanos;
+    private final Ticker ticker;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private Settings settings;
+    private long loadedAt;
+
+    public SettingsCache(long ttl, TimeUnit unit) {
+        this(ttl, unit, Ticker.systemTicker());
+    }
+
+    public SettingsCache(long ttl, TimeUnit unit, Ticker ticker) {
+        checkArgument(ttl > 0, "ttl must be positive");
+        this.ttlNanos = checkNotNull(unit).toNanos(ttl);
+        this.ticker = checkNotNull(ticker);
+    }
+
+    /**
+     * Returns the cached settings, or null if nothing is cached or the cached
+     * settings have expired.
+     *
+     * @return
+     */
+    public synchronized Settings get() {
+        if (settings != null && ticker.read() - loadedAt < ttlNanos) {
+            hitCount.incrementAndGet();
+            return settings;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    synchronized void put(Settings settings) {
+        this.settings = checkNotNull(settings);
+        this.loadedAt = ticker.read();
+    }
+
+    /**
+     * Applies a successful phone toggle to the cached settings without
+     * changing their expiry.
+     *
+     * @param id
+     * @param enabled
+     */
+    synchronized void update(int id, boolean enabled) {
+        if (settings != null) {
+            settings = settings.withPhoneEnabled(id, enabled);
+        }
+    }
+
+    /**
+     * Discards the cached settings so that the next fetch goes to the network.
+     */
+    public synchronized void invalidate() {
+        settings = null;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SettingsCache{hits=" + hitCount + ", misses=" + missCount + "}";
+    }
+}
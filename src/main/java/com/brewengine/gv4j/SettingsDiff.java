@@ -0,0 +1,57 @@
+package com.brewengine.gv4j;
+
+import java.util.List;
+
+/**
+ * Changes between two {@link Settings} snapshots, as returned by
+ * {@link Settings#diff(Settings)}.
+ *
+ * Removed phones are as they were in the older snapshot; all others are as
+ * they are in the newer one.
+ */
+public class SettingsDiff {
+
+    private final List<Phone> added;
+    private final List<Phone> removed;
+    private final List<Phone> enabled;
+    private final List<Phone> disabled;
+
+    SettingsDiff(List<Phone> added, List<Phone> removed, List<Phone> enabled, List<Phone> disabled) {
+        this.added = added;
+        this.removed = removed;
+        this.enabled = enabled;
+        this.disabled = disabled;
+    }
+
+    public List<Phone> getAdded() {
+        return added;
+    }
+
+    public List<Phone> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return phones present in both snapshots which were enabled
+     */
+    public List<Phone> getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return phones present in both snapshots which were disabled
+     */
+    public List<Phone> getDisabled() {
+        return disabled;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && enabled.isEmpty() && disabled.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "SettingsDiff{added=" + added + ", removed=" + removed
+                + ", enabled=" + enabled + ", disabled=" + disabled + "}";
+    }
+}
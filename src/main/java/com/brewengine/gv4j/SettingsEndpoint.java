@@ -0,0 +1,116 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds the requests of the GV settings endpoint, which both fetches the
+ * settings and toggles phones.
+ *
+ * One instance serves a session: the media type and URLs are parsed once,
+ * and the {gvx: "..."} body is reused until the gvx cookie changes.
+ */
+class SettingsEndpoint {
+
+    static final MediaType TEXT_PLAIN = MediaType.parse("text/plain; charset=UTF-8");
+
+    private static final HttpUrl BASE_URL = HttpUrl.parse("https://www.google.com/voice/m/x?m=set");
+
+    private final String version;
+    private final HttpUrl settingsUrl;
+
+    private volatile GvxBody gvxBody;
+
+    SettingsEndpoint(int apiVersion) {
+        version = String.valueOf(apiVersion);
+        settingsUrl = BASE_URL.newBuilder().addQueryParameter("v", version).build();
+    }
+
+    Request settingsRequest(String gvx) {
+        return settingsRequest(gvx, Operation.FETCH_SETTINGS);
+    }
+
+    /**
+     * @param gvx value of the gvx cookie
+     * @param operation {@link Operation#FETCH_SETTINGS} or
+     * {@link Operation#POLL_SETTINGS}
+     * @return
+     */
+    Request settingsRequest(String gvx, Operation operation) {
+        return new Request.Builder()
+                .url(settingsUrl)
+                .post(body(gvx))
+                .tag(operation)
+                .build();
+    }
+
+    /**
+     * Toggle request for a batch of phones; each field is URL encoded.
+     *
+     * @param gvx value of the gvx cookie
+     * @param batch phones mapped to whether they should be enabled
+     * @return
+     */
+    Request toggleRequest(String gvx, List<Map.Entry<Phone, Boolean>> batch) {
+        HttpUrl.Builder url = BASE_URL.newBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            Phone phone = batch.get(i).getKey();
+            boolean enable = batch.get(i).getValue();
+            String index = String.valueOf(i);
+
+            url.addQueryParameter("fp_id" + index, String.valueOf(phone.getId()));
+            url.addQueryParameter("fp_name" + index, String.valueOf(phone.getName()));
+            url.addQueryParameter("fp_num" + index, String.valueOf(phone.getPhoneNumber()));
+            url.addQueryParameter("fp_type" + index, String.valueOf(phone.getType()));
+            url.addQueryParameter("fp_pol" + index, String.valueOf(phone.getPolicyBitmask()));
+            url.addQueryParameter("fp_sen" + index, String.valueOf(phone.isSmsEnabled()));
+            url.addQueryParameter("fp_red" + index, String.valueOf(phone.getBehaviorOnRedirect()));
+            url.addQueryParameter("fp_en" + index, String.valueOf(enable));
+        }
+        url.addQueryParameter("v", version);
+
+        return new Request.Builder()
+                .url(url.build())
+                .post(body(gvx))
+                .tag(Operation.TOGGLE_PHONES)
+                .build();
+    }
+
+    /**
+     * Returns the request body for the given gvx cookie value, reusing the
+     * last one built if the value has not changed. Bodies hold their bytes,
+     * so the same instance can be sent any number of times.
+     *
+     * @param value
+     * @return
+     */
+    RequestBody body(String value) {
+        checkNotNull(value);
+        GvxBody cached = gvxBody;
+        if (cached != null && cached.value.equals(value)) {
+            return cached.body;
+        }
+
+        RequestBody body = RequestBody.create(TEXT_PLAIN, "{gvx: \"" + value + "\"}");
+        gvxBody = new GvxBody(value, body);
+        return body;
+    }
+
+    private static class GvxBody {
+        final String value;
+        final RequestBody body;
+
+        GvxBody(String value, RequestBody body) {
+            this.value = value;
+            this.body = body;
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Records the {@link Settings} snapshots of any number of accounts in a
+ * compact, append-only binary log on local disk, for auditing.
+ *
+ * Each snapshot is delta-encoded against the previous snapshot of the same
+ * account: a phone only stores the fields that changed, and a snapshot in
+ * which nothing changed takes a few bytes. Every {@link #KEYFRAME_INTERVAL}th
+ * snapshot of an account is stored in full so that the latest state can be
+ * found without decoding the whole history. Use {@link SettingsLogReader} to
+ * read the log back.
+ *
+ * Reopening an existing log carries on where it left off; the log is cut at
+ * the first record which is torn by a crash or otherwise unreadable. The
+ * existing records are read without mapping the file, so that it can be
+ * truncated on every platform.
+ *
+ * <code>
+ *     SettingsLog log = new SettingsLog(new File("settings.log"));
+ *     log.append(account, gv.fetchSettings());
+ * </code>
+ */
+public class SettingsLog implements Closeable {
+
+    /**
+     * Number of snapshots of an account between full snapshots.
+     */
+    static final int KEYFRAME_INTERVAL = 64;
+
+    static final byte[] HEADER = {'G', 'V', '4', 'J', 'L', 'O', 'G', 1};
+
+    /**
+     * Size of the reads which recover the state of an existing log.
+     */
+    private static final long READ_SIZE = 1 << 16;
+
+    // record types
+    static final byte ACCOUNT = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte KEYFRAME = 3;
+
+    // phone flags; the field flags mark values which differ from the base phone
+    static final int ENABLED = 1;
+    static final int SMS_ENABLED = 1 << 1;
+    static final int NAME = 1 << 2;
+    static final int PHONE_NUMBER = 1 << 3;
+    static final int TYPE = 1 << 4;
+    static final int POLICY_BITMASK = 1 << 5;
+    static final int BEHAVIOR_ON_REDIRECT = 1 << 6;
+
+    /**
+     * Base of phones which did not appear in the previous snapshot.
+     */
+    static final Phone NO_PHONE = new Phone(0, null, null, 0, false, false, 0, 0);
+
+    private final File file;
+    private final RandomAccessFile out;
+    private final Map<String, Account> accounts = new HashMap<String, Account>();
+    private final Output buffer = new Output();
+    private long length;
+    private boolean closed;
+
+    /**
+     * Opens the log, creating it if it does not exist.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public SettingsLog(File file) throws IOException {
+        this.file = checkNotNull(file);
+        long validLength = 0;
+        if (file.length() > 0) {
+            // a mapping would outlive the reader, and a mapped file cannot be truncated on Windows
+            SettingsLogReader reader = new SettingsLogReader(file, READ_SIZE, false);
+            try {
+                List<String> names = reader.getAccounts();
+                for (int i = 0; i < names.size(); i++) {
+                    Account account = new Account(i);
+                    SettingsLog.Entry latest = reader.latest(names.get(i));
+                    if (latest != null) {
+                        account.lastOffset = reader.getLastOffset(i);
+                        account.lastTimeMillis = latest.getTimeMillis();
+                        account.lastSettings = latest.getSettings();
+                        account.sinceKeyframe = reader.getSnapshotsSinceKeyframe(i);
+                    }
+                    accounts.put(names.get(i), account);
+                }
+                validLength = reader.getValidLength();
+            } finally {
+                reader.close();
+            }
+        }
+
+        out = new RandomAccessFile(file, "rw");
+        if (validLength == 0) {
+            out.setLength(0);
+            out.write(HEADER);
+            length = HEADER.length;
+        } else {
+            // drops a torn or unreadable tail
+            out.setLength(validLength);
+            length = validLength;
+        }
+        out.seek(length);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return size of the log in bytes
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Appends a snapshot taken now.
+     *
+     * @param account
+     * @param settings
+     * @throws IOException
+     */
+    public void append(String account, Settings settings) throws IOException {
+        append(account, settings, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a snapshot taken at the given time.
+     *
+     * @param account
+     * @param settings
+     * @param timeMillis
+     * @throws IOException
+     */
+    public synchronized void append(String account, Settings settings, long timeMillis) throws IOException {
+        checkNotNull(account);
+        checkNotNull(settings);
+        checkState(!closed, "Log is closed.");
+
+        Account state = accounts.get(account);
+        if (state == null) {
+            state = new Account(accounts.size());
+            buffer.begin(ACCOUNT);
+            buffer.writeBytes(account.getBytes(Charsets.UTF_8));
+            write();
+            accounts.put(account, state);
+        }
+
+        boolean keyframe = state.lastSettings == null || state.sinceKeyframe + 1 >= KEYFRAME_INTERVAL;
+        Settings previous = keyframe ? null : state.lastSettings;
+        long offset = length;
+
+        buffer.begin(keyframe ? KEYFRAME : SNAPSHOT);
+        buffer.writeVarint(state.index);
+        if (keyframe) {
+            buffer.writeVarint(state.lastSettings == null ? 0 : offset - state.lastOffset);
+            buffer.writeSignedVarint(timeMillis);
+        } else {
+            buffer.writeVarint(offset - state.lastOffset);
+            buffer.writeSignedVarint(timeMillis - state.lastTimeMillis);
+        }
+
+        if (previous != null && isUnchanged(previous, settings)) {
+            buffer.writeVarint(0);
+        } else {
+            List<Phone> phones = settings.getPhones();
+            buffer.writeVarint(phones.size() + 1);
+            int previousId = 0;
+            for (Phone phone : phones) {
+                Phone base = previous == null ? null : previous.getPhone(phone.id);
+                writePhone(phone, base == null ? NO_PHONE : base, previousId);
+                previousId = phone.id;
+            }
+        }
+        write();
+
+        state.lastOffset = offset;
+        state.lastTimeMillis = timeMillis;
+        state.lastSettings = settings;
+        state.sinceKeyframe = keyframe ? 0 : state.sinceKeyframe + 1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writePhone(Phone phone, Phone base, int previousId) {
+        int flags = (phone.isEnabled ? ENABLED : 0) | (phone.isSmsEnabled ? SMS_ENABLED : 0);
+        if (!Objects.equal(phone.name, base.name)) {
+            flags |= NAME;
+        }
+        if (!Objects.equal(phone.phoneNumber, base.phoneNumber)) {
+            flags |= PHONE_NUMBER;
+        }
+        if (phone.type != base.type) {
+            flags |= TYPE;
+        }
+        if (phone.policyBitmask != base.policyBitmask) {
+            flags |= POLICY_BITMASK;
+        }
+        if (phone.behaviorOnRedirect != base.behaviorOnRedirect) {
+            flags |= BEHAVIOR_ON_REDIRECT;
+        }
+
+        // ids are usually listed in order, so their deltas are small
+        buffer.writeSignedVarint((long) phone.id - previousId);
+        buffer.writeByte(flags);
+        if ((flags & NAME) != 0) {
+            buffer.writeString(phone.name);
+        }
+        if ((flags & PHONE_NUMBER) != 0) {
+            buffer.writeString(phone.phoneNumber);
+        }
+        if ((flags & TYPE) != 0) {
+            buffer.writeSignedVarint(phone.type);
+        }
+        if ((flags & POLICY_BITMASK) != 0) {
+            buffer.writeSignedVarint(phone.policyBitmask);
+        }
+        if ((flags & BEHAVIOR_ON_REDIRECT) != 0) {
+            buffer.writeSignedVarint(phone.behaviorOnRedirect);
+        }
+    }
+
+    /**
+     * Writes the buffered record with a single write, so a crash tears at
+     * most the last record.
+     */
+    private void write() throws IOException {
+        int size = buffer.end();
+        out.write(buffer.bytes, 0, size);
+        length += size;
+    }
+
+    private static boolean isUnchanged(Settings previous, Settings settings) {
+        if (previous == settings) {
+            return true;
+        }
+        List<Phone> before = previous.getPhones();
+        List<Phone> after = settings.getPhones();
+        if (before.size() != after.size()) {
+            return false;
+        }
+        for (int i = 0; i < after.size(); i++) {
+            Phone a = before.get(i);
+            Phone b = after.get(i);
+            if (a.id != b.id || a.isEnabled != b.isEnabled || a.isSmsEnabled != b.isSmsEnabled
+                    || a.type != b.type || a.policyBitmask != b.policyBitmask
+                    || a.behaviorOnRedirect != b.behaviorOnRedirect
+                    || !Objects.equal(a.name, b.name) || !Objects.equal(a.phoneNumber, b.phoneNumber)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Account {
+        final int index;
+        long lastOffset;
+        long lastTimeMillis;
+        Settings lastSettings;
+        int sinceKeyframe;
+
+        Account(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A snapshot read back from the log.
+     */
+    public static class Entry {
+
+        private final String account;
+        private final long timeMillis;
+        private final Settings settings;
+
+        Entry(String account, long timeMillis, Settings settings) {
+            this.account = account;
+            this.timeMillis = timeMillis;
+            this.settings = settings;
+        }
+
+        public String getAccount() {
+            return account;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public Settings getSettings() {
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{account=" + account + ", timeMillis=" + timeMillis + ", settings=" + settings + "}";
+        }
+    }
+
+    /**
+     * Record being encoded: a 4 byte length followed by the record type and
+     * its varint encoded fields.
+     */
+    private static class Output {
+
+        byte[] bytes = new byte[256];
+        int size;
+
+        void begin(byte type) {
+            size = 4;
+            writeByte(type);
+        }
+
+        int end() {
+            int length = size - 4;
+            bytes[0] = (byte) (length >>> 24);
+            bytes[1] = (byte) (length >>> 16);
+            bytes[2] = (byte) (length >>> 8);
+            bytes[3] = (byte) length;
+            return size;
+        }
+
+        void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void writeBytes(byte[] b) {
+            if (size + b.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + b.length));
+            }
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes the UTF-8 length plus one, 0 standing for null, then the
+         * bytes.
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] b = value.getBytes(Charsets.UTF_8);
+            writeVarint(b.length + 1);
+            writeBytes(b);
+        }
+    }
+
+}
@@ -0,0 +1,491 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reads a {@link SettingsLog} through a memory mapping of the file, so the
+ * log is paged in by the operating system rather than loaded onto the heap.
+ *
+ * Opening the reader scans the record headers once and keeps only a small
+ * index per account. {@link #latest(String)} then decodes back to the
+ * account's last full snapshot, {@link #history(String)} follows the chain
+ * of the account's records and {@link #scan(Listener)} streams every
+ * snapshot in the order it was written.
+ *
+ * The reader sees the log as it was when it was opened. It is safe to use
+ * from several threads. Since a single mapping holds at most 2 GB, the file
+ * is mapped in chunks of {@link #CHUNK_SIZE} bytes, and records may straddle
+ * the chunk boundaries.
+ */
+public class SettingsLogReader implements Closeable {
+
+    /**
+     * Size of each mapping of the file.
+     */
+    static final long CHUNK_SIZE = 1L << 30;
+
+    private volatile Mapping buffer;
+    private final long validLength;
+
+    private final List<String> accounts = new ArrayList<String>();
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private long[] lastOffsets = new long[16];
+    private int[] snapshotCounts = new int[16];
+    private int[] sinceKeyframe = new int[16];
+
+    public SettingsLogReader(File file) throws IOException {
+        this(file, CHUNK_SIZE);
+    }
+
+    /**
+     * @param file
+     * @param chunkSize size of each mapping, a power of two
+     * @throws IOException
+     */
+    SettingsLogReader(File file, long chunkSize) throws IOException {
+        this(file, chunkSize, true);
+    }
+
+    /**
+     * @param file
+     * @param chunkSize size of each mapping or read, a power of two
+     * @param mapped false to read the file through its channel instead, so
+     * that no mapping of the file outlives the reader
+     * @throws IOException
+     */
+    SettingsLogReader(File file, long chunkSize, boolean mapped) throws IOException {
+        checkNotNull(file);
+        checkArgument(Long.bitCount(chunkSize) == 1 && chunkSize <= CHUNK_SIZE, "chunkSize must be a power of two");
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        int shift = Long.numberOfTrailingZeros(chunkSize);
+        if (mapped) {
+            try {
+                // the mappings stay valid once the file is closed
+                buffer = Mapping.map(in.getChannel(), in.length(), shift);
+            } finally {
+                in.close();
+            }
+        } else {
+            try {
+                buffer = Mapping.read(in.getChannel(), in.length(), shift);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        try {
+            validLength = validate(file);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private long validate(File file) throws IOException {
+        if (buffer.limit() == 0) {
+            return 0;
+        }
+        byte[] header = new byte[SettingsLog.HEADER.length];
+        if (buffer.limit() < header.length) {
+            throw new IOException("Not a settings log: " + file);
+        }
+        buffer.get(0, header);
+        if (!Arrays.equals(header, SettingsLog.HEADER)) {
+            throw new IOException("Not a settings log: " + file);
+        }
+        return index();
+    }
+
+    /**
+     * @return accounts in the order they first appear in the log
+     */
+    public List<String> getAccounts() {
+        return ImmutableList.copyOf(accounts);
+    }
+
+    public int getSnapshotCount(String account) {
+        Integer index = indexes.get(checkNotNull(account));
+        return index == null ? 0 : snapshotCounts[index];
+    }
+
+    /**
+     * Decodes the most recent snapshot of the account, starting from its
+     * last full snapshot.
+     *
+     * @param account
+     * @return the latest snapshot, or null if the account has none
+     * @throws IOException
+     */
+    public SettingsLog.Entry latest(String account) throws IOException {
+        Integer index = indexes.get(checkNotNull(account));
+        if (index == null || snapshotCounts[index] == 0) {
+            return null;
+        }
+        List<SettingsLog.Entry> entries = decodeChain(index, sinceKeyframe[index] + 1);
+        return entries.get(entries.size() - 1);
+    }
+
+    /**
+     * Decodes every snapshot of the account. Snapshots which did not change
+     * share the same {@link Settings}.
+     *
+     * @param account
+     * @return snapshots, oldest first
+     * @throws IOException
+     */
+    public List<SettingsLog.Entry> history(String account) throws IOException {
+        Integer index = indexes.get(checkNotNull(account));
+        if (index == null || snapshotCounts[index] == 0) {
+            return ImmutableList.of();
+        }
+        return decodeChain(index, snapshotCounts[index]);
+    }
+
+    /**
+     * Calls the listener with every snapshot in the order they were written.
+     * Only the latest snapshot of each account is held while scanning.
+     *
+     * @param listener
+     * @throws IOException
+     */
+    public void scan(Listener listener) throws IOException {
+        checkNotNull(listener);
+        Mapping buffer = buffer();
+        SettingsLog.Entry[] previous = new SettingsLog.Entry[accounts.size()];
+        long position = SettingsLog.HEADER.length;
+        while (position < validLength) {
+            int length = buffer.getInt(position);
+            long body = position + 4;
+            if (buffer.get(body) != SettingsLog.ACCOUNT) {
+                Input in = new Input(buffer, body + 1);
+                int index = (int) in.readVarint();
+                previous[index] = decode(buffer, position, accounts.get(index), previous[index]);
+                listener.onSnapshot(previous[index]);
+            }
+            position = body + length;
+        }
+    }
+
+    /**
+     * Releases the mappings, or closes the file if it is read without them.
+     * Mapped memory itself is unmapped once the buffers are garbage
+     * collected.
+     */
+    @Override
+    public void close() {
+        Mapping buffer = this.buffer;
+        this.buffer = null;
+        if (buffer != null) {
+            try {
+                buffer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public interface Listener {
+        void onSnapshot(SettingsLog.Entry entry) throws IOException;
+    }
+
+    long getValidLength() {
+        return validLength;
+    }
+
+    long getLastOffset(int index) {
+        return lastOffsets[index];
+    }
+
+    int getSnapshotsSinceKeyframe(int index) {
+        return sinceKeyframe[index];
+    }
+
+    /**
+     * Scans the record headers, stopping at the first record which is torn
+     * by a crash or otherwise unreadable.
+     *
+     * @return length of the readable records
+     */
+    private long index() throws IOException {
+        long limit = buffer.limit();
+        long position = SettingsLog.HEADER.length;
+        while (position + 5 <= limit) {
+            int length = buffer.getInt(position);
+            long body = position + 4;
+            if (length <= 0 || length > limit - body) {
+                break;
+            }
+
+            byte type = buffer.get(body);
+            if (type == SettingsLog.ACCOUNT) {
+                byte[] name = new byte[length - 1];
+                buffer.get(body + 1, name);
+                addAccount(new String(name, Charsets.UTF_8));
+            } else if (type == SettingsLog.SNAPSHOT || type == SettingsLog.KEYFRAME) {
+                long index = new Input(buffer, body + 1).readVarint();
+                if (index >= accounts.size()) {
+                    break;
+                }
+                int i = (int) index;
+                lastOffsets[i] = position;
+                snapshotCounts[i]++;
+                sinceKeyframe[i] = type == SettingsLog.KEYFRAME ? 0 : sinceKeyframe[i] + 1;
+            } else {
+                break;
+            }
+            position = body + length;
+        }
+        return position;
+    }
+
+    private void addAccount(String account) {
+        int index = accounts.size();
+        if (index == lastOffsets.length) {
+            lastOffsets = Arrays.copyOf(lastOffsets, index * 2);
+            snapshotCounts = Arrays.copyOf(snapshotCounts, index * 2);
+            sinceKeyframe = Arrays.copyOf(sinceKeyframe, index * 2);
+        }
+        accounts.add(account);
+        indexes.put(account, index);
+    }
+
+    /**
+     * Decodes the last count snapshots of an account, the first of which
+     * must be a full snapshot.
+     */
+    private List<SettingsLog.Entry> decodeChain(int index, int count) throws IOException {
+        Mapping buffer = buffer();
+
+        // follow the back pointers, then decode forwards
+        long[] offsets = new long[count];
+        long offset = lastOffsets[index];
+        for (int i = count - 1; i >= 0; i--) {
+            offsets[i] = offset;
+            Input in = new Input(buffer, offset + 5);
+            in.readVarint();
+            offset -= in.readVarint();
+        }
+
+        String account = accounts.get(index);
+        List<SettingsLog.Entry> entries = new ArrayList<SettingsLog.Entry>(count);
+        SettingsLog.Entry previous = null;
+        for (long o : offsets) {
+            previous = decode(buffer, o, account, previous);
+            entries.add(previous);
+        }
+        return entries;
+    }
+
+    private static SettingsLog.Entry decode(Mapping buffer, long offset, String account, SettingsLog.Entry previous)
+            throws IOException {
+        boolean keyframe = buffer.get(offset + 4) == SettingsLog.KEYFRAME;
+        if (!keyframe && previous == null) {
+            throw new IOException("Corrupt settings log at " + offset);
+        }
+
+        Input in = new Input(buffer, offset + 5);
+        in.readVarint();
+        in.readVarint();
+        long timeMillis = in.readSignedVarint();
+        if (!keyframe) {
+            timeMillis += previous.getTimeMillis();
+        }
+
+        Settings base = keyframe ? null : previous.getSettings();
+        int count = (int) in.readVarint() - 1;
+        if (count < 0) {
+            return new SettingsLog.Entry(account, timeMillis, base);
+        }
+
+        Settings.Builder builder = new Settings.Builder();
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            id += (int) in.readSignedVarint();
+            int flags = in.readByte();
+            Phone phone = base == null ? null : base.getPhone(id);
+            if (phone == null) {
+                phone = SettingsLog.NO_PHONE;
+            }
+            builder.addPhone(id,
+                    (flags & SettingsLog.NAME) != 0 ? in.readString() : phone.name,
+                    (flags & SettingsLog.PHONE_NUMBER) != 0 ? in.readString() : phone.phoneNumber,
+                    (flags & SettingsLog.TYPE) != 0 ? (int) in.readSignedVarint() : phone.type,
+                    (flags & SettingsLog.ENABLED) != 0,
+                    (flags & SettingsLog.SMS_ENABLED) != 0,
+                    (flags & SettingsLog.POLICY_BITMASK) != 0 ? (int) in.readSignedVarint() : phone.policyBitmask,
+                    (flags & SettingsLog.BEHAVIOR_ON_REDIRECT) != 0 ? (int) in.readSignedVarint() : phone.behaviorOnRedirect);
+        }
+        return new SettingsLog.Entry(account, timeMillis, builder.build());
+    }
+
+    private Mapping buffer() {
+        Mapping buffer = this.buffer;
+        checkState(buffer != null, "Reader is closed.");
+        return buffer;
+    }
+
+    /**
+     * The file in chunks, either mapped or read into the heap as they are
+     * needed, read at absolute positions which may span two chunks.
+     */
+    private static class Mapping {
+
+        private final ByteBuffer[] chunks;
+        private final FileChannel channel;
+        private final int shift;
+        private final long mask;
+        private final long limit;
+
+        private int cachedIndex = -1;
+        private ByteBuffer cached;
+
+        private Mapping(ByteBuffer[] chunks, FileChannel channel, long limit, int shift) {
+            this.chunks = chunks;
+            this.channel = channel;
+            this.shift = shift;
+            this.mask = (1L << shift) - 1;
+            this.limit = limit;
+        }
+
+        static Mapping map(FileChannel channel, long limit, int shift) throws IOException {
+            long chunkSize = 1L << shift;
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((limit + chunkSize - 1) >>> shift)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << shift;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, limit - start));
+            }
+            return new Mapping(chunks, null, limit, shift);
+        }
+
+        /**
+         * Reads the chunks through the channel, keeping only the last one
+         * read; closing the mapping closes the channel.
+         */
+        static Mapping read(FileChannel channel, long limit, int shift) {
+            return new Mapping(null, channel, limit, shift);
+        }
+
+        long limit() {
+            return limit;
+        }
+
+        byte get(long position) throws IOException {
+            return chunk(position).get((int) (position & mask));
+        }
+
+        int getInt(long position) throws IOException {
+            ByteBuffer chunk = chunk(position);
+            int offset = (int) (position & mask);
+            if (offset + 4 <= chunk.limit()) {
+                return chunk.getInt(offset);
+            }
+            return (get(position) & 0xFF) << 24 | (get(position + 1) & 0xFF) << 16
+                    | (get(position + 2) & 0xFF) << 8 | get(position + 3) & 0xFF;
+        }
+
+        void get(long position, byte[] dst) throws IOException {
+            int copied = 0;
+            while (copied < dst.length) {
+                ByteBuffer chunk = chunk(position).duplicate();
+                chunk.position((int) (position & mask));
+                int length = Math.min(dst.length - copied, chunk.remaining());
+                chunk.get(dst, copied, length);
+                copied += length;
+                position += length;
+            }
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private ByteBuffer chunk(long position) throws IOException {
+            int index = (int) (position >>> shift);
+            if (channel == null) {
+                return chunks[index];
+            }
+            synchronized (this) {
+                if (index != cachedIndex) {
+                    long start = (long) index << shift;
+                    ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(mask + 1, limit - start));
+                    while (chunk.hasRemaining()) {
+                        if (channel.read(chunk, start + chunk.position()) < 0) {
+                            throw new EOFException();
+                        }
+                    }
+                    chunk.flip();
+                    cached = chunk;
+                    cachedIndex = index;
+                }
+                return cached;
+            }
+        }
+    }
+
+    /**
+     * Cursor over the mapping using absolute reads, so concurrent readers do
+     * not share a position.
+     */
+    private static class Input {
+
+        private final Mapping buffer;
+        private long position;
+
+        Input(Mapping buffer, long position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readByte() throws IOException {
+            return buffer.get(position++) & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            position += length;
+            return new String(bytes, Charsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Polls the settings of any number of sessions from one shared scheduler and
+ * reports changes to listeners.
+ *
+ * Each session is polled at its own adaptive interval: the interval doubles
+ * (up to the maximum) every time nothing has changed and drops back to the
+ * minimum after a change. First polls are spread uniformly over the minimum
+ * interval and every delay is jittered, so thousands of sessions watched at
+ * once do not poll in lockstep.
+ *
+ * Polls are sent asynchronously, so the scheduler thread is never blocked on
+ * the network, and a session never has more than one poll in flight. They
+ * are tagged {@link Operation#POLL_SETTINGS}, so a {@link RequestScheduler}
+ * starts them after interactive requests.
+ *
+ * <code>
+ *     SettingsWatcher watcher = new SettingsWatcher.Builder()
+ *             .interval(30, TimeUnit.SECONDS, 15, TimeUnit.MINUTES)
+ *             .build();
+ *     SettingsWatcher.Subscription subscription = watcher.watch(gv, listener);
+ * </code>
+ */
+public class SettingsWatcher {
+
+    /**
+     * Fraction of each delay that is randomized.
+     */
+    static final double JITTER = 0.2;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gv4j-watcher-%d").build());
+
+    private static final SettingsWatcher DEFAULT = new Builder().build();
+
+    private final ScheduledExecutorService scheduler;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final Random random = new Random();
+
+    private SettingsWatcher(Builder builder) {
+        scheduler = builder.scheduler;
+        minIntervalNanos = builder.minIntervalNanos;
+        maxIntervalNanos = builder.maxIntervalNanos;
+    }
+
+    /**
+     * @return the watcher used by {@link GV#watch(Listener)}
+     */
+    static SettingsWatcher getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Starts polling the session's settings. The first poll sets the
+     * baseline; the listener is called for later changes only.
+     *
+     * @param gv a logged in session
+     * @param listener
+     * @return subscription which stops the polling when cancelled
+     */
+    public Subscription watch(GV gv, Listener listener) {
+        Subscription subscription = new Subscription(checkNotNull(gv), checkNotNull(listener));
+        subscription.schedule((long) (random.nextDouble() * minIntervalNanos));
+        return subscription;
+    }
+
+    public interface Listener {
+        /**
+         * Called from the polling threads when the settings have changed.
+         *
+         * @param settings the new settings
+         * @param diff changes since the previous poll
+         */
+        void onChange(Settings settings, SettingsDiff diff);
+
+        /**
+         * Called when a poll fails; polling carries on at a backed off
+         * interval.
+         *
+         * @param t
+         */
+        void onFailure(Throwable t);
+    }
+
+    public class Subscription {
+
+        private final GV gv;
+        private final Listener listener;
+
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> next;
+
+        // only touched by the single poll in flight
+        private Settings settings;
+        private long intervalNanos = minIntervalNanos;
+
+        Subscription(GV gv, Listener listener) {
+            this.gv = gv;
+            this.listener = listener;
+        }
+
+        /**
+         * Stops polling. A poll already in flight completes but is not
+         * reported.
+         */
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> future = next;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        long getIntervalNanos() {
+            return intervalNanos;
+        }
+
+        private void schedule(long delayNanos) {
+            if (cancelled) {
+                return;
+            }
+            next = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    poll();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+            if (cancelled) {
+                next.cancel(false);
+            }
+        }
+
+        private void poll() {
+            if (cancelled) {
+                return;
+            }
+            ListenableFuture<Settings> future;
+            try {
+                future = gv.pollSettingsAsync();
+            } catch (RuntimeException e) {
+                future = Futures.immediateFailedFuture(e);
+            }
+
+            Futures.addCallback(future, new FutureCallback<Settings>() {
+                @Override
+                public void onSuccess(Settings current) {
+                    Settings previous = settings;
+                    settings = current;
+                    SettingsDiff diff = previous == null ? null : previous.diff(current);
+                    boolean changed = diff != null && !diff.isEmpty();
+                    if (changed && !cancelled) {
+                        try {
+                            listener.onChange(current, diff);
+                        } catch (RuntimeException ignored) {
+                            // must not stop the polling
+                        }
+                    }
+                    schedule(nextDelayNanos(changed));
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (!cancelled) {
+                        try {
+                            listener.onFailure(t);
+                        } catch (RuntimeException ignored) {
+                            // must not stop the polling
+                        }
+                    }
+                    schedule(nextDelayNanos(false));
+                }
+            });
+        }
+
+        /**
+         * Adapts the interval to the outcome of the last poll and returns
+         * the jittered delay until the next one.
+         *
+         * @param changed
+         * @return
+         */
+        long nextDelayNanos(boolean changed) {
+            if (changed) {
+                intervalNanos = minIntervalNanos;
+            } else {
+                intervalNanos = Math.min(maxIntervalNanos, intervalNanos * 2);
+            }
+            double jitter = 1 - JITTER / 2 + random.nextDouble() * JITTER;
+            return (long) (intervalNanos * jitter);
+        }
+    }
+
+    public static class Builder {
+
+        private ScheduledExecutorService scheduler = SCHEDULER;
+        private long minIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+        private long maxIntervalNanos = TimeUnit.MINUTES.toNanos(15);
+
+        /**
+         * Interval used right after a change, and the interval quiet
+         * sessions back off to.
+         *
+         * @param min
+         * @param minUnit
+         * @param max
+         * @param maxUnit
+         * @return
+         */
+        public Builder interval(long min, TimeUnit minUnit, long max, TimeUnit maxUnit) {
+            long minNanos = minUnit.toNanos(min);
+            long maxNanos = maxUnit.toNanos(max);
+            checkArgument(minNanos > 0, "min must be positive");
+            checkArgument(maxNanos >= minNanos, "max must not be less than min");
+            this.minIntervalNanos = minNanos;
+            this.maxIntervalNanos = maxNanos;
+            return this;
+        }
+
+        /**
+         * Scheduler which triggers the polls; by default a single daemon
+         * thread shared by all watchers.
+         *
+         * @param scheduler
+         * @return
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = checkNotNull(scheduler);
+            return this;
+        }
+
+        public SettingsWatcher build() {
+            return new SettingsWatcher(this);
+        }
+    }
+
+}
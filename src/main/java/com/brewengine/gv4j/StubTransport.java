@@ -0,0 +1,90 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-process {@link Transport} which answers requests with queued responses,
+ * in order, and records the requests it receives. Cookies set by a queued
+ * response are stored in the session's cookie jar as if they came from the
+ * network.
+ *
+ * <code>
+ *     StubTransport transport = new StubTransport();
+ *     transport.enqueue(StubTransport.response(200, "text/plain", "OK"));
+ *     GV gv = new GV(transport);
+ * </code>
+ */
+public class StubTransport implements Transport {
+
+    private final Queue<TransportResponse> responses = new LinkedList<TransportResponse>();
+    private final List<TransportRequest> requests = new ArrayList<TransportRequest>();
+
+    /**
+     * Builds a response to enqueue. The URL is replaced by the request's.
+     *
+     * @param code
+     * @param contentType
+     * @param body encoded as UTF-8
+     * @return
+     */
+    public static TransportResponse response(int code, String contentType, String body) {
+        return response(code, contentType, body, ImmutableMap.<String, List<String>>of());
+    }
+
+    /**
+     * @param code
+     * @param contentType
+     * @param body encoded as UTF-8
+     * @param headers e.g. Set-Cookie headers
+     * @return
+     */
+    public static TransportResponse response(int code, String contentType, String body,
+                                             Map<String, List<String>> headers) {
+        ImmutableMap.Builder<String, List<String>> allHeaders = ImmutableMap.builder();
+        allHeaders.putAll(headers);
+        allHeaders.put("Content-Type", ImmutableList.of(contentType));
+        return new TransportResponse(code, "", "http://stub/", allHeaders.build(), contentType,
+                body.getBytes(Charsets.UTF_8));
+    }
+
+    public synchronized void enqueue(TransportResponse response) {
+        responses.add(checkNotNull(response));
+    }
+
+    /**
+     * @return requests received so far, oldest first
+     */
+    public synchronized List<TransportRequest> getRequests() {
+        return ImmutableList.copyOf(requests);
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request, CookieHandler cookieHandler) throws IOException {
+        TransportResponse response;
+        synchronized (this) {
+            requests.add(checkNotNull(request));
+            response = responses.poll();
+        }
+        if (response == null) {
+            throw new IOException("No response queued for " + request);
+        }
+
+        cookieHandler.put(URI.create(request.getUrl()), response.getHeaders());
+        return new TransportResponse(response.getCode(), response.getMessage(), request.getUrl(),
+                response.getHeaders(), response.getContentType(), response.getBody());
+    }
+
+}
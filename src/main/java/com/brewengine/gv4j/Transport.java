@@ -0,0 +1,38 @@
+package com.brewengine.gv4j;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+
+/**
+ * Sends GV4J's HTTP requests over the wire.
+ *
+ * A {@link GV} built on a transport still schedules, measures and hedges its
+ * requests through OkHttp's interceptors, and runs them on the dispatcher's
+ * threads; only the exchange itself is handed to the transport.
+ * Implementations:
+ *
+ * <ul>
+ *     <li>{@link OkHttpTransport}, OkHttp's own connection pool and HTTP stack</li>
+ *     <li>{@link UrlConnectionTransport}, the JDK's HttpURLConnection</li>
+ *     <li>{@link StubTransport}, canned in-process responses for tests</li>
+ * </ul>
+ *
+ * Transports may be shared by many sessions, so they must be thread-safe
+ * and keep no cookies of their own.
+ */
+public interface Transport {
+
+    /**
+     * Sends the request and reads the whole response, following redirects.
+     *
+     * Cookies are read from and stored to the given handler, including on
+     * every redirect.
+     *
+     * @param request
+     * @param cookieHandler the session's cookie jar
+     * @return the final response
+     * @throws IOException
+     */
+    TransportResponse execute(TransportRequest request, CookieHandler cookieHandler) throws IOException;
+
+}
@@ -0,0 +1,77 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Last application interceptor of a session built on a {@link Transport}:
+ * hands each request to the transport instead of to OkHttp's network
+ * layer, so the interceptors before it (metrics, limits) apply to every
+ * transport alike.
+ */
+class TransportInterceptor implements Interceptor {
+
+    private final Transport transport;
+    private final CookieHandler cookieHandler;
+
+    TransportInterceptor(Transport transport, CookieHandler cookieHandler) {
+        this.transport = checkNotNull(transport);
+        this.cookieHandler = checkNotNull(cookieHandler);
+    }
+
+    Transport getTransport() {
+        return transport;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        TransportResponse response = transport.execute(toTransportRequest(request), cookieHandler);
+
+        Headers.Builder headers = new Headers.Builder();
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                headers.add(header.getKey(), value);
+            }
+        }
+
+        MediaType contentType = response.getContentType() == null ? null : MediaType.parse(response.getContentType());
+        return new Response.Builder()
+                .request(request.newBuilder().url(response.getUrl()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(response.getCode())
+                .message(response.getMessage())
+                .headers(headers.build())
+                .body(ResponseBody.create(contentType, response.getBody()))
+                .build();
+    }
+
+    static TransportRequest toTransportRequest(Request request) throws IOException {
+        RequestBody body = request.body();
+        String contentType = null;
+        byte[] bytes = null;
+        if (body != null) {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            bytes = buffer.readByteArray();
+            contentType = body.contentType() == null ? null : body.contentType().toString();
+        }
+        return new TransportRequest(request.method(), request.urlString(), request.headers().toMultimap(),
+                contentType, bytes, Operation.of(request.tag()));
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * HTTP request handed to a {@link Transport}: a GET, or a POST of a form or
+ * of text.
+ */
+public class TransportRequest {
+
+    static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private final String method;
+    private final String url;
+    private final Map<String, List<String>> headers;
+    private final String contentType;
+    private final byte[] body;
+    private final Operation operation;
+
+    TransportRequest(String method, String url, Map<String, List<String>> headers, String contentType, byte[] body,
+                     Operation operation) {
+        this.method = checkNotNull(method);
+        this.url = checkNotNull(url);
+        this.headers = ImmutableMap.copyOf(headers);
+        this.contentType = contentType;
+        this.body = body;
+        this.operation = checkNotNull(operation);
+    }
+
+    public static TransportRequest get(String url) {
+        return new TransportRequest("GET", url, ImmutableMap.<String, List<String>>of(), null, null, Operation.OTHER);
+    }
+
+    /**
+     * @param url
+     * @param fields form fields in order, URL encoded as UTF-8
+     * @return
+     */
+    public static TransportRequest form(String url, Multimap<String, String> fields) {
+        Escaper escaper = UrlEscapers.urlFormParameterEscaper();
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> field : fields.entries()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(escaper.escape(field.getKey())).append('=').append(escaper.escape(field.getValue()));
+        }
+        byte[] body = builder.toString().getBytes(Charsets.UTF_8);
+        return new TransportRequest("POST", url, ImmutableMap.<String, List<String>>of(), FORM_CONTENT_TYPE, body,
+                Operation.OTHER);
+    }
+
+    /**
+     * @param url
+     * @param contentType e.g. "text/plain; charset=UTF-8"
+     * @param text encoded as UTF-8
+     * @return
+     */
+    public static TransportRequest text(String url, String contentType, String text) {
+        return new TransportRequest("POST", url, ImmutableMap.<String, List<String>>of(), checkNotNull(contentType),
+                text.getBytes(Charsets.UTF_8), Operation.OTHER);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return request headers, excluding cookies and the content type
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return content type of the body, or null if there is no body
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the body, or null if there is none; must not be modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return what the request does, for transports that treat operations
+     * differently
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportRequest{method=" + method + ", url=" + url + ", operation=" + operation + "}";
+    }
+}
@@ -0,0 +1,71 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Fully read HTTP response returned by a {@link Transport}.
+ */
+public class TransportResponse {
+
+    private final int code;
+    private final String message;
+    private final String url;
+    private final Map<String, List<String>> headers;
+    private final String contentType;
+    private final byte[] body;
+
+    /**
+     * @param code
+     * @param message reason phrase, may be empty
+     * @param url final URL, after redirects
+     * @param headers response headers
+     * @param contentType content type of the body, or null if unknown
+     * @param body the body, empty if there is none
+     */
+    public TransportResponse(int code, String message, String url, Map<String, List<String>> headers,
+                             String contentType, byte[] body) {
+        this.code = code;
+        this.message = message == null ? "" : message;
+        this.url = checkNotNull(url);
+        this.headers = ImmutableMap.copyOf(headers);
+        this.contentType = contentType;
+        this.body = checkNotNull(body);
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the body; must not be modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportResponse{code=" + code + ", message=" + message + ", url=" + url + "}";
+    }
+}
@@ -0,0 +1,163 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CookieHandler;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link Transport} over the JDK's {@link HttpURLConnection}, which keeps
+ * its own per-host keep-alive cache and needs no third party HTTP stack.
+ *
+ * Redirects are followed here rather than by the connection, so that the
+ * session's cookie jar sees every hop; the JVM-wide default cookie handler
+ * is never used.
+ */
+public class UrlConnectionTransport implements Transport {
+
+    static final int MAX_REDIRECTS = 20;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public UrlConnectionTransport() {
+        this(10, 10, TimeUnit.SECONDS);
+    }
+
+    public UrlConnectionTransport(long connectTimeout, long readTimeout, TimeUnit unit) {
+        checkArgument(connectTimeout >= 0, "connectTimeout must not be negative");
+        checkArgument(readTimeout >= 0, "readTimeout must not be negative");
+        this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(connectTimeout));
+        this.readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(readTimeout));
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request, CookieHandler cookieHandler) throws IOException {
+        checkNotNull(request);
+        checkNotNull(cookieHandler);
+
+        String method = request.getMethod();
+        byte[] body = request.getBody();
+        URL url = new URL(request.getUrl());
+
+        for (int redirects = 0; ; redirects++) {
+            URI uri = toUri(url);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            boolean complete = false;
+            try {
+                connection.setInstanceFollowRedirects(false);
+                connection.setUseCaches(false);
+                connection.setConnectTimeout(connectTimeoutMillis);
+                connection.setReadTimeout(readTimeoutMillis);
+                connection.setRequestMethod(method);
+                for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+                    for (String value : header.getValue()) {
+                        connection.addRequestProperty(header.getKey(), value);
+                    }
+                }
+                addCookies(connection, cookieHandler.get(uri, request.getHeaders()));
+
+                if (body != null) {
+                    connection.setDoOutput(true);
+                    if (request.getContentType() != null) {
+                        connection.setRequestProperty("Content-Type", request.getContentType());
+                    }
+                    connection.setFixedLengthStreamingMode(body.length);
+                    OutputStream out = connection.getOutputStream();
+                    try {
+                        out.write(body);
+                    } finally {
+                        out.close();
+                    }
+                }
+
+                int code = connection.getResponseCode();
+                Map<String, List<String>> headers = headers(connection);
+                cookieHandler.put(uri, headers);
+                byte[] bytes = readBody(connection, code);
+                complete = true;
+
+                String location = connection.getHeaderField("Location");
+                if (isRedirect(code) && location != null) {
+                    if (redirects == MAX_REDIRECTS) {
+                        throw new ProtocolException("Too many redirects: " + redirects);
+                    }
+                    url = new URL(url, location);
+                    // like browsers, turn POSTs into GETs except for 307 and 308
+                    if (code != 307 && code != 308 && !"HEAD".equals(method)) {
+                        method = "GET";
+                        body = null;
+                    }
+                    continue;
+                }
+
+                return new TransportResponse(code, connection.getResponseMessage(), url.toString(), headers,
+                        connection.getContentType(), bytes);
+            } finally {
+                // a fully read connection is kept alive for reuse
+                if (!complete) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    private static void addCookies(HttpURLConnection connection, Map<String, List<String>> cookieHeaders) {
+        for (Map.Entry<String, List<String>> header : cookieHeaders.entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                connection.setRequestProperty(header.getKey(), Joiner.on("; ").join(header.getValue()));
+            }
+        }
+    }
+
+    private static Map<String, List<String>> headers(HttpURLConnection connection) {
+        ImmutableMap.Builder<String, List<String>> headers = ImmutableMap.builder();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // the status line is listed under the null key
+            if (header.getKey() != null) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return headers.build();
+    }
+
+    private static byte[] readBody(HttpURLConnection connection, int code) throws IOException {
+        InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isRedirect(int code) {
+        return code == 301 || code == 302 || code == 303 || code == 307 || code == 308;
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+    }
+
+}
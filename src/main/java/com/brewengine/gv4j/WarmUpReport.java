@@ -0,0 +1,153 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.net.CookieManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Outcome of opening pooled connections ahead of use, see
+ * {@link GV#warmUp()} and {@link GVPool#warmUp(int)}.
+ */
+public class WarmUpReport {
+
+    private final int requestCount;
+    private final int failureCount;
+    private final int pooledConnectionCount;
+    private final long elapsedNanos;
+
+    WarmUpReport(int requestCount, int failureCount, int pooledConnectionCount, long elapsedNanos) {
+        this.requestCount = requestCount;
+        this.failureCount = failureCount;
+        this.pooledConnectionCount = pooledConnectionCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Sends concurrent HEAD requests to each URL, so that DNS lookups, TCP
+     * and TLS handshakes are done and the connections are left in the
+     * client's pool. Redirects are not followed and cookies are neither sent
+     * nor stored. Any response counts as success, since the connection was
+     * made.
+     *
+     * @param client
+     * @param urls
+     * @param connectionsPerHost concurrent requests per URL, bounded in
+     *                           effect by the dispatcher's requests per host
+     * @return future report
+     */
+    static ListenableFuture<WarmUpReport> warmUp(OkHttpClient client, List<String> urls, int connectionsPerHost) {
+        checkArgument(connectionsPerHost > 0, "connectionsPerHost must be positive");
+
+        // clones share the connection pool and dispatcher
+        final OkHttpClient warmUpClient = client.clone();
+        warmUpClient.setFollowRedirects(false);
+        warmUpClient.setCookieHandler(null);
+        List<Interceptor> interceptors = warmUpClient.interceptors();
+        for (int i = 0; i < interceptors.size(); i++) {
+            if (interceptors.get(i) instanceof TransportInterceptor) {
+                Transport transport = ((TransportInterceptor) interceptors.get(i)).getTransport();
+                interceptors.set(i, new TransportInterceptor(transport, new CookieManager()));
+            }
+        }
+
+        final List<String> targets = ImmutableList.copyOf(urls);
+        final int requestCount = targets.size() * connectionsPerHost;
+        final AtomicInteger remaining = new AtomicInteger(requestCount);
+        final AtomicInteger failures = new AtomicInteger();
+        final SettableFuture<WarmUpReport> result = SettableFuture.create();
+        final long start = System.nanoTime();
+
+        if (requestCount == 0) {
+            result.set(new WarmUpReport(0, 0, pooledConnections(warmUpClient), 0));
+            return result;
+        }
+
+        FutureCallback<Response> callback = new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                GV.closeQuietly(response);
+                done();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failures.incrementAndGet();
+                done();
+            }
+
+            private void done() {
+                if (remaining.decrementAndGet() == 0) {
+                    result.set(new WarmUpReport(requestCount, failures.get(), pooledConnections(warmUpClient),
+                            System.nanoTime() - start));
+                }
+            }
+        };
+
+        for (String url : targets) {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .head()
+                    .tag(Operation.WARM_UP)
+                    .build();
+            for (int i = 0; i < connectionsPerHost; i++) {
+                Futures.addCallback(GV.enqueue(warmUpClient, request), callback);
+            }
+        }
+        return result;
+    }
+
+    private static int pooledConnections(OkHttpClient client) {
+        ConnectionPool pool = client.getConnectionPool();
+        return (pool != null ? pool : ConnectionPool.getDefault()).getConnectionCount();
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return number of requests which could not connect
+     */
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return connections in the pool once warm-up finished, including any
+     * opened before
+     */
+    public int getPooledConnectionCount() {
+        return pooledConnectionCount;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true if every request connected
+     */
+    public boolean isWarm() {
+        return failureCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{requests=" + requestCount + ", failures=" + failureCount
+                + ", pooledConnections=" + pooledConnectionCount + ", elapsed=" + getElapsed(TimeUnit.MILLISECONDS) + "ms}";
+    }
+}
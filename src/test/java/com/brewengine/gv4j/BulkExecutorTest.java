@@ -0,0 +1,102 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BulkExecutorTest {
+
+    @Test
+    public void concurrencyCapTest() throws Exception {
+        final List<SettableFuture<String>> started = Collections.synchronizedList(new ArrayList<SettableFuture<String>>());
+        BulkExecutor.Task<String> task = new BulkExecutor.Task<String>() {
+            @Override
+            public ListenableFuture<String> run(GV gv) {
+                SettableFuture<String> future = SettableFuture.create();
+                started.add(future);
+                return future;
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+
+        BulkExecutor executor = new BulkExecutor(new GVPool.Builder().build(), 3);
+        ListenableFuture<BulkExecutor.Report> report = executor.execute(accounts(10), task, listener);
+        assertEquals(3, started.size());
+
+        started.get(0).set("done");
+        assertEquals(4, started.size());
+        assertEquals(1, listener.results.size());
+
+        started.get(1).setException(new IOException("boom"));
+        for (int i = 2; i < 10; i++) {
+            started.get(i).set("done");
+        }
+
+        BulkExecutor.Report done = report.get(1, TimeUnit.SECONDS);
+        assertEquals(10, started.size());
+        assertEquals(9, done.getSuccessCount());
+        assertEquals(1, done.getFailureCount());
+        assertEquals(9, listener.results.size());
+        assertTrue(listener.failures.values().iterator().next() instanceof IOException);
+    }
+
+    @Test
+    public void completedTasksDoNotRecurseTest() throws Exception {
+        BulkExecutor.Task<String> task = new BulkExecutor.Task<String>() {
+            @Override
+            public ListenableFuture<String> run(GV gv) {
+                return Futures.immediateFuture("done");
+            }
+        };
+
+        GVPool pool = new GVPool.Builder().maxSessions(0).build();
+        BulkExecutor.Report report = new BulkExecutor(pool, 1)
+                .execute(accounts(20000), task, new RecordingListener())
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(20000, report.getSuccessCount());
+    }
+
+    @Test
+    public void emptyRunTest() throws Exception {
+        BulkExecutor.Report report = new BulkExecutor(new GVPool.Builder().build(), 4)
+                .execute(new ArrayList<String>(), BulkExecutor.logout(), new RecordingListener())
+                .get(1, TimeUnit.SECONDS);
+        assertEquals(0, report.getSuccessCount());
+        assertEquals(0, report.getFailureCount());
+    }
+
+    private static List<String> accounts(int count) {
+        List<String> accounts = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            accounts.add("user" + i + "@gmail.com");
+        }
+        return accounts;
+    }
+
+    private static class RecordingListener implements BulkExecutor.Listener<Object> {
+        final Map<String, Object> results = new ConcurrentHashMap<String, Object>();
+        final Map<String, Throwable> failures = new ConcurrentHashMap<String, Throwable>();
+
+        @Override
+        public void onSuccess(String account, Object result) {
+            results.put(account, result);
+        }
+
+        @Override
+        public void onFailure(String account, Throwable t) {
+            failures.put(account, t);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Predicates;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.brewengine.gv4j.TestFixtures.VOICE;
+import static com.brewengine.gv4j.TestFixtures.names;
+import static com.brewengine.gv4j.TestFixtures.newCookie;
+import static org.junit.Assert.*;
+
+public class CompactCookieStoreTest {
+
+    private static final URI ACCOUNTS = URI.create("https://accounts.google.com/ServiceLogin");
+    private static final URI YOUTUBE = URI.create("https://accounts.youtube.com/accounts/CheckConnection");
+
+    @Test
+    public void findTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        assertNull(store.find("gvx"));
+        assertNull(store.findValue("gvx"));
+        assertEquals(0, store.getExpiry("gvx"));
+
+        HttpCookie gvx = newCookie("gvx", "1", ".google.com");
+        gvx.setSecure(true);
+        gvx.setMaxAge(3600);
+        store.add(VOICE, gvx);
+        store.add(VOICE, newCookie("gvx", "2", ".google.com"));
+        store.add(ACCOUNTS, newCookie("SID", "3", "accounts.google.com"));
+
+        HttpCookie found = store.find("gvx");
+        assertEquals("2", found.getValue());
+        assertEquals(".google.com", found.getDomain());
+        assertEquals("/", found.getPath());
+        assertFalse(found.getSecure());
+        assertEquals(-1, found.getMaxAge());
+        assertEquals("2", store.findValue("gvx"));
+        assertEquals(Long.MAX_VALUE, store.getExpiry("gvx"));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void packedValueTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        store.add(VOICE, newCookie("latin", "caf\u00e9", ".google.com"));
+        store.add(VOICE, newCookie("unicode", "\u2603", ".google.com"));
+
+        assertEquals("caf\u00e9", store.find("latin").getValue());
+        assertEquals("\u2603", store.find("unicode").getValue());
+        assertEquals("caf\u00e9", store.findValue("latin"));
+        assertEquals("\u2603", store.findValue("unicode"));
+    }
+
+    @Test
+    public void filterTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        store.add(YOUTUBE, newCookie("LOGIN_INFO", "1", ".youtube.com"));
+        store.add(VOICE, newCookie("_ga", "2", ".google.com"));
+        store.add(VOICE, newCookie("1P_JAR", "3", ".google.com"));
+        store.add(VOICE, newCookie("notgoogle", "4", ".notgoogle.com"));
+        store.add(VOICE, newCookie("SID", "5", ".google.com"));
+        store.add(ACCOUNTS, newCookie("GAPS", "6", "accounts.google.com"));
+        assertEquals(names("GAPS", "SID"), names(store.getCookies()));
+
+        CompactCookieStore all = new CompactCookieStore(Predicates.<HttpCookie>alwaysTrue());
+        all.add(YOUTUBE, newCookie("LOGIN_INFO", "1", ".youtube.com"));
+        assertEquals(1, all.size());
+    }
+
+    @Test
+    public void expiredTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        HttpCookie gvx = newCookie("gvx", "1", ".google.com");
+        gvx.setMaxAge(3600);
+        store.add(VOICE, gvx);
+        assertTrue(store.find("gvx").getMaxAge() > 3590);
+
+        HttpCookie delete = newCookie("gvx", "", ".google.com");
+        delete.setMaxAge(0);
+        store.add(VOICE, delete);
+        assertNull(store.find("gvx"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void getByUriTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        store.add(VOICE, newCookie("google", "1", ".google.com"));
+        store.add(ACCOUNTS, newCookie("accounts", "2", "accounts.google.com"));
+        store.add(ACCOUNTS, newCookie("hostOnly", "3", null));
+
+        assertEquals(names("accounts", "google", "hostOnly"), names(store.get(ACCOUNTS)));
+        assertEquals(names("google"), names(store.get(VOICE)));
+        assertEquals(names("google"), names(store.get(URI.create("https://google.com/"))));
+        assertTrue(store.get(URI.create("https://notgoogle.com/")).isEmpty());
+        assertNull(store.find("hostOnly").getDomain());
+    }
+
+    @Test
+    public void removeTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        HttpCookie gvx = newCookie("gvx", "1", ".google.com");
+        store.add(VOICE, gvx);
+        store.add(VOICE, newCookie("SID", "2", ".google.com"));
+
+        assertTrue(store.remove(VOICE, gvx));
+        assertFalse(store.remove(VOICE, gvx));
+        assertNull(store.find("gvx"));
+
+        assertTrue(store.removeAll());
+        assertFalse(store.removeAll());
+        assertTrue(store.getCookies().isEmpty());
+    }
+
+    @Test
+    public void replaceWithTest() {
+        CompactCookieStore store = new CompactCookieStore();
+        store.add(VOICE, newCookie("gvx", "old", ".google.com"));
+        store.add(VOICE, newCookie("NID", "1", ".google.com"));
+
+        CompactCookieStore fresh = store.newStore();
+        fresh.add(VOICE, newCookie("gvx", "new", ".google.com"));
+        store.replaceWith(fresh);
+        assertEquals("new", store.find("gvx").getValue());
+        assertNull(store.find("NID"));
+
+        // the stores stay independent
+        store.add(VOICE, newCookie("SID", "2", ".google.com"));
+        assertNull(fresh.find("SID"));
+    }
+
+    @Test
+    public void cookieManagerTest() throws IOException {
+        CompactCookieStore store = new CompactCookieStore();
+        CookieManager cookieManager = new CookieManager(store, CookiePolicy.ACCEPT_ALL);
+
+        Map<String, List<String>> headers = Collections.singletonMap("Set-Cookie",
+                Arrays.asList("gvx=abc; Domain=.google.com; Path=/; Secure", "NID=1; Domain=.google.com; Path=/",
+                        "_ga=2; Domain=.google.com; Path=/"));
+        cookieManager.put(VOICE, headers);
+
+        assertEquals("abc", store.find("gvx").getValue());
+        assertTrue(store.find("gvx").getSecure());
+        assertEquals(2, store.size());
+
+        List<String> cookie = cookieManager.get(ACCOUNTS, Collections.<String, List<String>>emptyMap()).get("Cookie");
+        assertNotNull(cookie);
+        assertTrue(cookie.toString().contains("gvx=abc"));
+        assertTrue(cookie.toString().contains("NID=1"));
+
+        // secure cookies are not sent over plain http
+        cookie = cookieManager.get(URI.create("http://www.google.com/"), Collections.<String, List<String>>emptyMap()).get("Cookie");
+        assertFalse(cookie.toString().contains("gvx"));
+    }
+
+}
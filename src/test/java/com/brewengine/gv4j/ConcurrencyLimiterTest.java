@@ -0,0 +1,150 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.SocketException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void additiveIncreaseTest() throws InterruptedIOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder().initialLimit(4).limits(1, 6).build();
+
+        // about one more per round of successful requests
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.release(false);
+        }
+        assertEquals(5, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.release(false);
+        }
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void multiplicativeDecreaseTest() throws InterruptedIOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .initialLimit(20)
+                .backoffRatio(0.5)
+                .build();
+
+        limiter.acquire();
+        limiter.release(true);
+        assertEquals(10, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(true);
+        }
+        assertEquals(1, limiter.getLimit());
+        assertEquals(11, limiter.getDropCount());
+    }
+
+    @Test
+    public void queuesBeyondLimitTest() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder().initialLimit(1).limits(1, 1).build();
+        limiter.acquire();
+        assertEquals(1, limiter.getInFlight());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedIOException ignored) {
+                }
+            }
+        });
+        waiter.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getQueueDepth() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, limiter.getQueueDepth());
+        assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+
+        limiter.release(false);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void cancelledCallTest() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder().initialLimit(20).build();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(limiter);
+        client.interceptors().add(new TransportInterceptor(new Transport() {
+            @Override
+            public TransportResponse execute(TransportRequest request, CookieHandler cookieHandler)
+                    throws IOException {
+                started.countDown();
+                try {
+                    cancelled.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                // what a cancelled call sees once its socket is closed
+                throw new SocketException("Socket closed");
+            }
+        }, new CookieManager()));
+
+        ListenableFuture<Response> future = GV.call(client,
+                new Request.Builder().url("http://localhost/").tag(Operation.FETCH_SETTINGS).build());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        future.cancel(true);
+        cancelled.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getInFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getDropCount());
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void sharedByPoolTest() {
+        GVPool pool = new GVPool.Builder().maxRequests(8).build();
+        ConcurrencyLimiter limiter = pool.getConcurrencyLimiter();
+        assertEquals(8, limiter.getLimit());
+        RequestScheduler scheduler = pool.getRequestScheduler();
+        assertSame(limiter, scheduler.getConcurrencyLimiter());
+        assertSame(scheduler, RequestScheduler.find(pool.session("a@gmail.com").getClient()));
+        assertSame(scheduler, RequestScheduler.find(pool.session("b@gmail.com").getClient()));
+    }
+
+    @Test
+    public void boundedByDispatcherTest() {
+        // admitted requests must not queue again in the dispatcher
+        GVPool pool = new GVPool.Builder().maxRequests(64).maxRequestsPerHost(16).build();
+        ConcurrencyLimiter limiter = pool.getConcurrencyLimiter();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire(0));
+            limiter.release(false);
+        }
+        assertEquals(16, limiter.getLimit());
+    }
+
+}
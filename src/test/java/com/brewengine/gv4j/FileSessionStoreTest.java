@@ -0,0 +1,111 @@
+package com.brewengine.gv4j;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FileSessionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoadTest() throws IOException {
+        FileSessionStore store = new FileSessionStore(folder.getRoot());
+
+        HttpCookie gvx = newCookie("gvx", "token", 3600);
+        gvx.setHttpOnly(true);
+        HttpCookie session = newCookie("SID", "session", -1);
+        HttpCookie expired = newCookie("old", "value", 0);
+        store.save("user@gmail.com", Arrays.asList(gvx, session, expired));
+
+        List<HttpCookie> cookies = new FileSessionStore(folder.getRoot()).load("user@gmail.com");
+        assertEquals(2, cookies.size());
+
+        HttpCookie loaded = findCookieByName(cookies, "gvx");
+        assertNotNull(loaded);
+        assertEquals("token", loaded.getValue());
+        assertEquals(".google.com", loaded.getDomain());
+        assertEquals("/", loaded.getPath());
+        assertTrue(loaded.isHttpOnly());
+        assertTrue(loaded.getMaxAge() > 3590 && loaded.getMaxAge() <= 3600);
+
+        loaded = findCookieByName(cookies, "SID");
+        assertNotNull(loaded);
+        assertFalse(loaded.isHttpOnly());
+        assertEquals(-1, loaded.getMaxAge());
+
+        assertNull(findCookieByName(cookies, "old"));
+    }
+
+    @Test
+    public void loadMissingAccountTest() throws IOException {
+        FileSessionStore store = new FileSessionStore(folder.getRoot());
+        assertTrue(store.load("nobody@gmail.com").isEmpty());
+    }
+
+    @Test
+    public void deleteTest() throws IOException {
+        FileSessionStore store = new FileSessionStore(folder.getRoot());
+        store.save("user@gmail.com", Arrays.asList(newCookie("gvx", "token", 3600)));
+        store.delete("user@gmail.com");
+        assertTrue(store.load("user@gmail.com").isEmpty());
+    }
+
+    @Test
+    public void restoreSessionTest() throws IOException {
+        FileSessionStore store = new FileSessionStore(folder.getRoot());
+
+        GV before = new GV();
+        before.getCookieManager().getCookieStore().add(null, newCookie("gvx", "token", 3600));
+        assertTrue(before.isLoggedIn());
+        before.saveSession(store, "user@gmail.com");
+
+        GV after = new GV();
+        assertFalse(after.isLoggedIn());
+        assertTrue(after.restoreSession(store, "user@gmail.com"));
+        assertTrue(after.isLoggedIn());
+    }
+
+    @Test
+    public void keepsRecordedExpiryTest() throws Exception {
+        FileSessionStore store = new FileSessionStore(folder.getRoot());
+
+        GV gv = new GV();
+        gv.getCookieManager().getCookieStore().add(null, newCookie("gvx", "token", 3600));
+        long expiry = gv.getGvxExpiry();
+        Thread.sleep(1100);
+
+        // saving again later must not extend the cookie's lifetime
+        gv.saveSession(store, "user@gmail.com");
+        HttpCookie loaded = findCookieByName(store.load("user@gmail.com"), "gvx");
+        long loadedExpiry = System.currentTimeMillis() + loaded.getMaxAge() * 1000;
+        assertTrue(Math.abs(loadedExpiry - expiry) < 2000);
+        assertTrue(loaded.getMaxAge() < 3600);
+    }
+
+    private static HttpCookie newCookie(String name, String value, long maxAge) {
+        HttpCookie cookie = new HttpCookie(name, value);
+        cookie.setDomain(".google.com");
+        cookie.setPath("/");
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+
+    private static HttpCookie findCookieByName(List<HttpCookie> cookies, String name) {
+        for (HttpCookie cookie : cookies) {
+            if (name.equals(cookie.getName())) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+}
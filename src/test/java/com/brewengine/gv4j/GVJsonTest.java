@@ -3,6 +3,8 @@ package com.brewengine.gv4j;
 import com.google.gson.Gson;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -242,6 +244,104 @@ public class GVJsonTest {
         assertNull(findPhoneById(settings.getPhones(), 9));
     }
 
+    @Test
+    public void readerSkipsPrefixAndUnusedFieldsTest() throws IOException {
+        String string =
+            ")]}',\n" +
+            "{" +
+                "\"app_version\":13," +
+                "\"unused\":{\"nested\":[1,{\"a\":null}]}," +
+                "\"settings_response\":{" +
+                    "\"user_preferences\":{" +
+                        "\"email_address\":null," +
+                        "\"default_call_settings\":{" +
+                            "\"disabled_forwarding_id\":[8]," +
+                            "\"do_not_disturb\":false" +
+                        "}," +
+                        "\"forwarding\":[" +
+                            "{" +
+                                "\"behavior_on_redirect\":1," +
+                                "\"id\":1," +
+                                "\"name\":\"Phone 1\"," +
+                                "\"phone_number\":\"+15555551212\"," +
+                                "\"policy_bitmask\":3," +
+                                "\"sms_enabled\":true," +
+                                "\"schedule\":{\"days\":[1,2,3]}," +
+                                "\"type\":2" +
+                            "}," +
+                            "{" +
+                                "\"id\":8," +
+                                "\"name\":null," +
+                                "\"phone_number\":\"example@gmail.com\"," +
+                                "\"type\":3" +
+                            "}" +
+                        "]" +
+                    "}" +
+                "}" +
+            "}";
+
+        GVJson json = GVJsonReader.read(new StringReader(string));
+        Settings settings = Settings.valueOf(json);
+
+        Phone phone1 = findPhoneById(settings.getPhones(), 1);
+        assertNotNull(phone1);
+        assertEquals(1,              phone1.getBehaviorOnRedirect());
+        assertEquals("Phone 1",      phone1.getName());
+        assertEquals("+15555551212", phone1.getPhoneNumber());
+        assertEquals(3,              phone1.getPolicyBitmask());
+        assertEquals(true,           phone1.isSmsEnabled());
+        assertEquals(2,              phone1.getType());
+        assertTrue(phone1.isEnabled());
+
+        Phone phone8 = findPhoneById(settings.getPhones(), 8);
+        assertNotNull(phone8);
+        assertNull(phone8.getName());
+        assertEquals("example@gmail.com", phone8.getPhoneNumber());
+        assertEquals(3,                   phone8.getType());
+        assertFalse(phone8.isEnabled());
+
+        assertEquals(2, settings.getPhones().size());
+    }
+
+    @Test
+    public void readerSkipsNullDisabledIdTest() throws IOException {
+        String string = GVJsonReader.XSSI_PREFIX + "\n" +
+            "{" +
+                "\"settings_response\":{" +
+                    "\"user_preferences\":{" +
+                        "\"default_call_settings\":{" +
+                            "\"disabled_forwarding_id\":[null,8]" +
+                        "}," +
+                        "\"forwarding\":[" +
+                            "{" +
+                                "\"id\":1," +
+                                "\"phone_number\":\"+15555551212\"" +
+                            "}," +
+                            "{" +
+                                "\"id\":8," +
+                                "\"phone_number\":\"example@gmail.com\"" +
+                            "}" +
+                        "]" +
+                    "}" +
+                "}" +
+            "}";
+
+        GVJson json = GVJsonReader.read(new StringReader(string));
+        assertEquals(1, json.settingsResponse.userPreferences.defaultCallSettings.disabledForwardingId.size());
+
+        Settings fromJson = Settings.valueOf(json);
+        Settings read = GVJsonReader.readSettings(new StringReader(string));
+        for (Settings settings : new Settings[] {fromJson, read}) {
+            assertTrue(findPhoneById(settings.getPhones(), 1).isEnabled());
+            assertFalse(findPhoneById(settings.getPhones(), 8).isEnabled());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readerRequiresPrefixTest() throws IOException {
+        GVJsonReader.read(new StringReader("{\"settings_response\":{}}"));
+    }
+
     private static GVJson.Forward findForwardById(List<GVJson.Forward> forwarding, int id) {
         for (GVJson.Forward forward : forwarding) {
             if (forward.id == id) {
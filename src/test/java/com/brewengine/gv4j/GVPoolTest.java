@@ -0,0 +1,58 @@
+package com.brewengine.gv4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GVPoolTest {
+
+    @Test
+    public void sessionPerAccountTest() {
+        GVPool pool = new GVPool.Builder().build();
+
+        GV a = pool.session("a@gmail.com");
+        GV b = pool.session("b@gmail.com");
+
+        assertSame(a, pool.session("a@gmail.com"));
+        assertSame(a, pool.getSession("a@gmail.com"));
+        assertNotSame(a, b);
+        assertNotSame(a.getCookieManager(), b.getCookieManager());
+        assertNull(pool.getSession("c@gmail.com"));
+        assertEquals(2, pool.size());
+
+        pool.removeSession("a@gmail.com");
+        assertNull(pool.getSession("a@gmail.com"));
+    }
+
+    @Test
+    public void sessionsShareConnectionsTest() {
+        GVPool pool = new GVPool.Builder()
+                .maxRequests(8)
+                .build();
+
+        GV a = pool.session("a@gmail.com");
+        GV b = pool.session("b@gmail.com");
+
+        assertNotSame(a.getClient(), b.getClient());
+        assertSame(a.getClient().getConnectionPool(), b.getClient().getConnectionPool());
+        assertSame(a.getClient().getDispatcher(), b.getClient().getDispatcher());
+        assertSame(a.getCookieManager(), a.getClient().getCookieHandler());
+        assertEquals(8, a.getClient().getDispatcher().getMaxRequests());
+        assertSame(pool.getMetrics(), a.getMetrics());
+        assertSame(pool.getMetrics(), b.getMetrics());
+    }
+
+    @Test
+    public void maxSessionsTest() {
+        GVPool pool = new GVPool.Builder()
+                .maxSessions(1)
+                .build();
+
+        pool.session("a@gmail.com");
+        pool.session("b@gmail.com");
+
+        assertEquals(1, pool.size());
+        assertNull(pool.getSession("a@gmail.com"));
+    }
+
+}
@@ -4,7 +4,10 @@ import org.junit.Test;
 import org.junit.Ignore;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -15,7 +18,8 @@ public class GVTest {
     private static final String PASSWORD = "password";
 
     /**
-     * Disables and re-enables first GV phone.
+     * Disables and re-enables first GV phone. Phones are snapshots, so the
+     * new state is only visible in freshly fetched settings.
      *
      * @throws IOException
      */
@@ -36,16 +40,52 @@ public class GVTest {
         assertTrue(phoneBefore.isEnabled());
         System.out.println("Disabling " + phoneBefore);
         gv.disablePhone(phoneBefore);
-        assertFalse(phoneBefore.isEnabled());
+        assertTrue(phoneBefore.isEnabled());
 
         Settings settingsAfter = gv.fetchSettings();
         assertFalse(settingsAfter.getPhones().isEmpty());
 
-        Phone phoneAfter = findPhoneById(settingsAfter.getPhones(), id);
+        Phone phoneAfter = settingsAfter.getPhone(id);
         assertFalse(phoneAfter.isEnabled());
         System.out.println("Enabling " + phoneAfter);
         gv.enablePhone(phoneAfter);
-        assertTrue(phoneAfter.isEnabled());
+        assertTrue(gv.fetchSettings().getPhone(id).isEnabled());
+    }
+
+    /**
+     * Disables and re-enables every GV phone using one batched request each
+     * way.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void setPhonesEnabledTest() throws IOException {
+        if ("username".equalsIgnoreCase(USERNAME)) {
+            fail("Configure GV username/password before running this test.");
+        }
+
+        GV gv = new GV();
+        gv.login(USERNAME, PASSWORD);
+
+        List<Phone> phones = gv.fetchSettings().getPhones();
+        assertFalse(phones.isEmpty());
+
+        Map<Phone, Boolean> disable = new HashMap<Phone, Boolean>();
+        Map<Phone, Boolean> enable = new HashMap<Phone, Boolean>();
+        for (Phone phone : phones) {
+            disable.put(phone, false);
+            enable.put(phone, true);
+        }
+
+        gv.setPhonesEnabled(disable);
+        for (Phone phone : gv.fetchSettings().getPhones()) {
+            assertFalse(phone.isEnabled());
+        }
+
+        gv.setPhonesEnabled(enable);
+        for (Phone phone : gv.fetchSettings().getPhones()) {
+            assertTrue(phone.isEnabled());
+        }
     }
 
     /**
@@ -68,13 +108,24 @@ public class GVTest {
         assertFalse(gv.isLoggedIn());
     }
 
-    private static Phone findPhoneById(List<Phone> phones, int id) {
-        for (Phone phone : phones) {
-            if (phone.getId() == id) {
-                return phone;
-            }
+    /**
+     * Same as logoutTest but drives the login/logout flow through the
+     * asynchronous API.
+     *
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    @Test
+    public void logoutAsyncTest() throws InterruptedException, ExecutionException {
+        if ("username".equalsIgnoreCase(USERNAME)) {
+            fail("Configure GV username/password before running this test.");
         }
-        return null;
+
+        GV gv = new GV();
+        gv.loginAsync(USERNAME, PASSWORD).get();
+        assertTrue(gv.isLoggedIn());
+        gv.logoutAsync().get();
+        assertFalse(gv.isLoggedIn());
     }
 
 }
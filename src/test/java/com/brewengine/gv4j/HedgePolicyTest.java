@@ -0,0 +1,139 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgePolicyTest {
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long firstDelayMillis;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int n = requests.incrementAndGet();
+                if (n == 1) {
+                    try {
+                        Thread.sleep(firstDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] body = ("response " + n).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void hedgeWinsTest() throws Exception {
+        // warm up so that the primary reaches the server first
+        OkHttpClient client = new OkHttpClient();
+        client.newCall(request()).execute().body().close();
+        requests.set(0);
+        final List<Request> sent = new CopyOnWriteArrayList<Request>();
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                sent.add(chain.request());
+                return chain.proceed(chain.request());
+            }
+        });
+
+        firstDelayMillis = 2000;
+        HedgePolicy policy = HedgePolicy.fixedDelay(100, TimeUnit.MILLISECONDS);
+
+        Response response = policy.enqueue(client, request(), null).get(1, TimeUnit.SECONDS);
+
+        assertEquals("response 2", response.body().string());
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+        // each attempt is a request of its own, with the same tag
+        assertEquals(2, sent.size());
+        assertNotSame(sent.get(0), sent.get(1));
+        assertEquals(Operation.FETCH_SETTINGS, sent.get(1).tag());
+    }
+
+    @Test
+    public void queuedRequestNotHedgedTest() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        RequestScheduler scheduler = new RequestScheduler.Builder().capacity(1).build();
+        client.interceptors().add(scheduler);
+
+        // holds the only slot for a while
+        firstDelayMillis = 1000;
+        ListenableFuture<Response> slow = GV.enqueue(client, request());
+        HedgePolicy policy = HedgePolicy.fixedDelay(200, TimeUnit.MILLISECONDS);
+        ListenableFuture<Response> queued = policy.enqueue(client, request(), null);
+
+        assertEquals("response 1", slow.get(5, TimeUnit.SECONDS).body().string());
+        assertEquals("response 2", queued.get(5, TimeUnit.SECONDS).body().string());
+        assertEquals(0, policy.getHedgeCount());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void fastResponseNotHedgedTest() throws Exception {
+        firstDelayMillis = 0;
+        HedgePolicy policy = HedgePolicy.fixedDelay(1, TimeUnit.SECONDS);
+
+        Response response = policy.enqueue(new OkHttpClient(), request(), null).get(1, TimeUnit.SECONDS);
+
+        assertEquals("response 1", response.body().string());
+        assertEquals(0, policy.getHedgeCount());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void percentileFallbackTest() {
+        HedgePolicy policy = HedgePolicy.percentile(95, 300, TimeUnit.MILLISECONDS);
+        MetricsInterceptor metrics = new MetricsInterceptor();
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), policy.delayNanos(metrics, request()));
+    }
+
+    private Request request() {
+        return new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/voice/m/x")
+                .tag(Operation.FETCH_SETTINGS)
+                .build();
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.brewengine.gv4j;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.brewengine.gv4j.TestFixtures.VOICE;
+import static com.brewengine.gv4j.TestFixtures.names;
+import static com.brewengine.gv4j.TestFixtures.newCookie;
+import static org.junit.Assert.*;
+
+public class IndexedCookieStoreTest {
+
+    private static final URI ACCOUNTS = URI.create("https://accounts.google.com/ServiceLogin");
+
+    @Test
+    public void findTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        assertNull(store.find("gvx"));
+
+        store.add(VOICE, newCookie("gvx", "1", ".google.com"));
+        store.add(VOICE, newCookie("SID", "2", ".google.com"));
+        store.add(ACCOUNTS, newCookie("SID", "3", "accounts.google.com"));
+
+        assertEquals("1", store.find("gvx").getValue());
+        assertEquals("2", store.find("SID", ".google.com").getValue());
+        assertEquals("3", store.find("SID", "accounts.google.com").getValue());
+        assertNull(store.find("SID", "www.google.com"));
+        assertEquals(3, store.getCookies().size());
+    }
+
+    @Test
+    public void replaceTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        store.add(VOICE, newCookie("gvx", "old", ".google.com"));
+        store.add(VOICE, newCookie("gvx", "new", ".google.com"));
+
+        assertEquals("new", store.find("gvx").getValue());
+        assertEquals(1, store.getCookies().size());
+    }
+
+    @Test
+    public void expiredTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        store.add(VOICE, newCookie("gvx", "1", ".google.com"));
+
+        HttpCookie delete = newCookie("gvx", "", ".google.com");
+        delete.setMaxAge(0);
+        store.add(VOICE, delete);
+
+        assertNull(store.find("gvx"));
+        assertTrue(store.getCookies().isEmpty());
+    }
+
+    @Test
+    public void getByUriTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        store.add(VOICE, newCookie("google", "1", ".google.com"));
+        store.add(ACCOUNTS, newCookie("accounts", "2", "accounts.google.com"));
+        store.add(ACCOUNTS, newCookie("hostOnly", "3", null));
+        store.add(VOICE, newCookie("other", "4", ".example.com"));
+
+        assertEquals(names("accounts", "google", "hostOnly"), names(store.get(ACCOUNTS)));
+        assertEquals(names("google"), names(store.get(VOICE)));
+        assertEquals(names("google"), names(store.get(URI.create("https://google.com/"))));
+        assertTrue(store.get(URI.create("https://notgoogle.com/")).isEmpty());
+    }
+
+    @Test
+    public void removeTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        HttpCookie gvx = newCookie("gvx", "1", ".google.com");
+        store.add(VOICE, gvx);
+        store.add(VOICE, newCookie("SID", "2", ".google.com"));
+
+        assertTrue(store.remove(VOICE, gvx));
+        assertFalse(store.remove(VOICE, gvx));
+        assertNull(store.find("gvx"));
+
+        assertTrue(store.removeAll());
+        assertFalse(store.removeAll());
+        assertTrue(store.getCookies().isEmpty());
+    }
+
+    @Test
+    public void cookieManagerTest() throws IOException {
+        IndexedCookieStore store = new IndexedCookieStore();
+        CookieManager cookieManager = new CookieManager(store, CookiePolicy.ACCEPT_ALL);
+
+        Map<String, List<String>> headers = Collections.singletonMap("Set-Cookie",
+                Arrays.asList("gvx=abc; Domain=.google.com; Path=/; Secure", "NID=1; Domain=.google.com; Path=/"));
+        cookieManager.put(VOICE, headers);
+
+        assertEquals("abc", store.find("gvx").getValue());
+
+        List<String> cookie = cookieManager.get(ACCOUNTS, Collections.<String, List<String>>emptyMap()).get("Cookie");
+        assertNotNull(cookie);
+        assertTrue(cookie.toString().contains("gvx=abc"));
+        assertTrue(cookie.toString().contains("NID=1"));
+    }
+
+    @Test
+    public void expiryTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        assertEquals(0, store.getExpiry("gvx"));
+
+        store.add(VOICE, newCookie("gvx", "1", ".google.com"));
+        assertEquals(Long.MAX_VALUE, store.getExpiry("gvx"));
+
+        HttpCookie gvx = newCookie("gvx", "2", ".google.com");
+        gvx.setMaxAge(3600);
+        long before = System.currentTimeMillis();
+        store.add(VOICE, gvx);
+        long expiry = store.getExpiry("gvx");
+        assertTrue(expiry >= before + 3600 * 1000);
+        assertTrue(expiry <= System.currentTimeMillis() + 3600 * 1000);
+    }
+
+    @Test
+    public void replaceWithTest() {
+        IndexedCookieStore store = new IndexedCookieStore();
+        store.add(VOICE, newCookie("gvx", "old", ".google.com"));
+        store.add(VOICE, newCookie("NID", "1", ".google.com"));
+
+        IndexedCookieStore fresh = new IndexedCookieStore();
+        fresh.add(VOICE, newCookie("gvx", "new", ".google.com"));
+        store.replaceWith(fresh);
+        assertEquals("new", store.find("gvx").getValue());
+        assertNull(store.find("NID"));
+
+        // the stores stay independent
+        store.add(VOICE, newCookie("SID", "2", ".google.com"));
+        assertNull(fresh.find("SID"));
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.brewengine.gv4j;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoginFormExtractorTest {
+
+    private static final String HTML =
+        "<!DOCTYPE html>" +
+        "<html><head>" +
+            "<script>var f = '<form id=\"gaia_loginform\" action=\"/script\"><input name=\"x\"></form>';</script>" +
+            "<style>form > input { color: red; }</style>" +
+        "</head><body>" +
+            "<!-- <form id=\"gaia_loginform\" action=\"/comment\"></form> -->" +
+            "<p>1 < 2</p>" +
+            "<form id=\"other\" action=\"/other\"><input name=\"other\" value=\"1\"></form>" +
+            "<FORM method=post ACTION='https://accounts.google.com/ServiceLoginAuth?a=1&amp;b=2' id=\"gaia_loginform\" novalidate>" +
+                "<input type=\"hidden\" name=\"GALX\" value=\"abc\">" +
+                "<input type=hidden name=_utf8 value=\"&#9731;\"/>" +
+                "<INPUT id=\"Email\" name=\"Email\" type=\"email\" value=\"\">" +
+                "<input id=\"Passwd\" name=\"Passwd\" type=\"password\">" +
+                "<input type=\"submit\" value=\"Sign in\">" +
+            "</form>" +
+            "<form id=\"after\"><input name=\"after\"></form>" +
+        "</body></html>";
+
+    @Test
+    public void extractTest() {
+        LoginForm form = LoginFormExtractor.extract(HTML, "gaia_loginform");
+        assertNotNull(form);
+        assertEquals("https://accounts.google.com/ServiceLoginAuth?a=1&b=2", form.getAction());
+
+        List<LoginForm.Input> inputs = form.getInputs();
+        assertEquals(5, inputs.size());
+        assertEquals(new LoginForm.Input("GALX", "abc"), inputs.get(0));
+        assertEquals(new LoginForm.Input("_utf8", "\u2603"), inputs.get(1));
+        assertEquals(new LoginForm.Input("Email", ""), inputs.get(2));
+        assertEquals(new LoginForm.Input("Passwd", ""), inputs.get(3));
+        assertEquals(new LoginForm.Input("", "Sign in"), inputs.get(4));
+    }
+
+    @Test
+    public void matchesJsoupTest() {
+        LoginForm expected = LoginForm.valueOf(GV.getLoginFormElement(Jsoup.parse(HTML)));
+        LoginForm actual = LoginFormExtractor.extract(HTML, "gaia_loginform");
+
+        assertNotNull(actual);
+        assertEquals(expected.getAction(), actual.getAction());
+        assertEquals(expected.getInputs(), actual.getInputs());
+    }
+
+    @Test
+    public void missingFormTest() {
+        assertNull(LoginFormExtractor.extract("<html><body><form id=\"other\"></form></body></html>", "gaia_loginform"));
+        assertNull(GV.findLoginForm("<html><body><p>Nothing here</p></body></html>"));
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsInterceptorTest {
+
+    @Test
+    public void countsPerOperationTest() throws IOException {
+        MetricsInterceptor metrics = new MetricsInterceptor();
+
+        Request settings = new Request.Builder()
+                .url("https://www.google.com/voice/m/x?m=set")
+                .post(RequestBody.create(MediaType.parse("text/plain"), "{gvx: \"abc\"}"))
+                .tag(Operation.FETCH_SETTINGS)
+                .build();
+        Response response = metrics.intercept(new FakeChain(settings, 200, "0123456789"));
+        assertEquals("0123456789", response.body().string());
+
+        Request logout = new Request.Builder()
+                .url("https://www.google.com/voice/m/logout")
+                .tag(Operation.LOGOUT)
+                .build();
+        metrics.intercept(new FakeChain(logout, 500, "")).body().close();
+
+        try {
+            metrics.intercept(new FakeChain(logout, -1, null));
+            fail();
+        } catch (IOException expected) {
+        }
+
+        MetricsInterceptor.Snapshot snapshot = metrics.snapshot(Operation.FETCH_SETTINGS);
+        assertEquals(1, snapshot.getRequestCount());
+        assertEquals(0, snapshot.getErrorCount());
+        assertEquals(12, snapshot.getBytesSent());
+        assertEquals(10, snapshot.getBytesReceived());
+        assertEquals(1, snapshot.getLatency().getCount());
+
+        snapshot = metrics.snapshot().get(Operation.LOGOUT);
+        assertEquals(2, snapshot.getRequestCount());
+        assertEquals(2, snapshot.getErrorCount());
+
+        assertEquals(0, metrics.snapshot(Operation.OTHER).getRequestCount());
+    }
+
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100, snapshot.getMax(TimeUnit.MILLISECONDS));
+        assertEquals(50.5, snapshot.getMean(TimeUnit.MILLISECONDS), 0.01);
+        assertEquals(50, snapshot.getPercentile(50, TimeUnit.MILLISECONDS), 50 * 0.125);
+        assertEquals(99, snapshot.getPercentile(99, TimeUnit.MILLISECONDS), 99 * 0.125);
+        assertEquals(100, snapshot.getPercentile(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, new LatencyHistogram().snapshot().getPercentile(99, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void bucketBoundsTest() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+        }
+    }
+
+    private static class FakeChain implements Interceptor.Chain {
+        private final Request request;
+        private final int code;
+        private final String body;
+
+        /**
+         * @param code response code, or -1 to fail with an IOException
+         */
+        FakeChain(Request request, int code, String body) {
+            this.request = request;
+            this.code = code;
+            this.body = body;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            if (code < 0) {
+                throw new IOException("Connection reset");
+            }
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .body(ResponseBody.create(MediaType.parse("text/plain"), body))
+                    .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableSet;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.CookieManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.brewengine.gv4j.TestFixtures.addGvx;
+import static com.brewengine.gv4j.TestFixtures.response;
+import static org.junit.Assert.*;
+
+public class ReconcileReportTest {
+
+    private static final String JSON = ")]}',\n" +
+        "{" +
+            "\"settings_response\":{" +
+                "\"user_preferences\":{" +
+                    "\"default_call_settings\":{" +
+                        "\"disabled_forwarding_id\":[4]" +
+                    "}," +
+                    "\"forwarding\":[" +
+                        "{\"id\":1,\"phone_number\":\"+15555551212\"}," +
+                        "{\"id\":4,\"phone_number\":\"+15555550000\"}," +
+                        "{\"id\":6,\"phone_number\":\"+15555550006\"}" +
+                    "]" +
+                "}" +
+            "}" +
+        "}";
+
+    private final List<Operation> requests = Collections.synchronizedList(new ArrayList<Operation>());
+
+    @Test
+    public void planTest() throws IOException {
+        Settings settings = Settings.valueOf(GVJsonReader.read(new StringReader(JSON)));
+
+        ReconcileReport report = ReconcileReport.plan(settings, ImmutableSet.of(4, 6, 9));
+        assertEquals(1, report.getEnabled().size());
+        assertEquals(4, report.getEnabled().get(0).getId());
+        assertTrue(report.getEnabled().get(0).isEnabled());
+        assertEquals(1, report.getDisabled().size());
+        assertEquals(1, report.getDisabled().get(0).getId());
+        assertEquals(ImmutableSet.of(9), report.getUnknownIds());
+        assertEquals(2, report.getToggles().size());
+        assertEquals(1, report.getRequestCount());
+
+        assertTrue(ReconcileReport.plan(settings, ImmutableSet.of(1, 6)).isEmpty());
+    }
+
+    @Test
+    public void reconcileTest() throws IOException {
+        GV gv = newSession();
+
+        ReconcileReport report = gv.reconcile(ImmutableSet.of(1, 6));
+        assertTrue(report.isEmpty());
+        assertEquals(Collections.singletonList(Operation.FETCH_SETTINGS), requests);
+
+        requests.clear();
+        report = gv.reconcile(ImmutableSet.of(4));
+        assertEquals(1, report.getEnabled().size());
+        assertEquals(2, report.getDisabled().size());
+        assertEquals(1, report.getRequestCount());
+        assertEquals(Arrays.asList(Operation.FETCH_SETTINGS, Operation.TOGGLE_PHONES), requests);
+    }
+
+    private GV newSession() {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                requests.add(Operation.of(chain.request().tag()));
+                return response(chain.request(), JSON);
+            }
+        });
+
+        GV gv = new GV(client, new CookieManager(new IndexedCookieStore(), null));
+        addGvx(gv, "token");
+        return gv;
+    }
+
+}
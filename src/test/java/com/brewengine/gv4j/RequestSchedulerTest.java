@@ -0,0 +1,169 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    /**
+     * Answers requests locally, each once a permit is released.
+     */
+    private final Semaphore gate = new Semaphore(0);
+    private final List<Operation> started = new CopyOnWriteArrayList<Operation>();
+    private volatile IOException failWith;
+
+    @Test
+    public void higherClassFirstTest() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler.Builder()
+                .capacity(1)
+                .reserve(Priority.INTERACTIVE_WRITE, 0)
+                .reserve(Priority.INTERACTIVE_READ, 0)
+                .reserve(Priority.LOGIN, 0)
+                .build();
+        OkHttpClient client = newClient(scheduler);
+
+        ListenableFuture<Response> first = GV.enqueue(client, request(Operation.POLL_SETTINGS));
+        awaitStarted(1);
+        ListenableFuture<Response> poll = GV.enqueue(client, request(Operation.POLL_SETTINGS));
+        ListenableFuture<Response> login = GV.enqueue(client, request(Operation.LOGIN_PAGE));
+        ListenableFuture<Response> toggle = GV.enqueue(client, request(Operation.TOGGLE_PHONES));
+        assertEquals(3, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getQueueDepth(Priority.BACKGROUND_READ));
+
+        gate.release(4);
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).code());
+        assertEquals(200, poll.get(5, TimeUnit.SECONDS).code());
+        assertEquals(200, login.get(5, TimeUnit.SECONDS).code());
+        assertEquals(200, toggle.get(5, TimeUnit.SECONDS).code());
+        assertEquals(Operation.TOGGLE_PHONES, started.get(1));
+        assertEquals(Operation.LOGIN_PAGE, started.get(2));
+        assertEquals(Operation.POLL_SETTINGS, started.get(3));
+
+        assertEquals(2, scheduler.getQueueWait(Priority.BACKGROUND_READ).getCount());
+        assertEquals(1, scheduler.getQueueWait(Priority.INTERACTIVE_WRITE).getCount());
+        assertEquals(0, scheduler.getConcurrencyLimiter().getInFlight());
+    }
+
+    @Test
+    public void reservedCapacityTest() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler.Builder()
+                .capacity(3)
+                .reserve(Priority.INTERACTIVE_WRITE, 1)
+                .reserve(Priority.INTERACTIVE_READ, 0)
+                .reserve(Priority.LOGIN, 0)
+                .build();
+        OkHttpClient client = newClient(scheduler);
+
+        for (int i = 0; i < 3; i++) {
+            GV.enqueue(client, request(Operation.POLL_SETTINGS));
+        }
+        awaitStarted(2);
+        assertEquals(2, scheduler.getInFlight(Priority.BACKGROUND_READ));
+        assertEquals(1, scheduler.getQueueDepth(Priority.BACKGROUND_READ));
+
+        // the reserved slot is still free for a toggle
+        ListenableFuture<Response> toggle = GV.enqueue(client, request(Operation.TOGGLE_PHONES));
+        awaitStarted(3);
+        assertEquals(1, scheduler.getInFlight(Priority.INTERACTIVE_WRITE));
+
+        gate.release(4);
+        assertEquals(200, toggle.get(5, TimeUnit.SECONDS).code());
+    }
+
+    @Test
+    public void cancelWhileQueuedTest() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler.Builder().capacity(1).build();
+        OkHttpClient client = newClient(scheduler);
+
+        ListenableFuture<Response> first = GV.enqueue(client, request(Operation.FETCH_SETTINGS));
+        awaitStarted(1);
+        ListenableFuture<Response> second = GV.enqueue(client, request(Operation.FETCH_SETTINGS));
+        assertEquals(1, scheduler.getQueueDepth(Priority.INTERACTIVE_READ));
+
+        second.cancel(true);
+        assertEquals(0, scheduler.getQueueDepth());
+
+        gate.release();
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).code());
+        assertEquals(1, started.size());
+    }
+
+    @Test
+    public void cancelInFlightTest() throws Exception {
+        RequestScheduler scheduler = new RequestScheduler.Builder()
+                .limiter(new ConcurrencyLimiter.Builder().initialLimit(20).build())
+                .build();
+        OkHttpClient client = newClient(scheduler);
+        failWith = new SocketException("Socket closed");
+
+        ListenableFuture<Response> future = GV.enqueue(client, request(Operation.FETCH_SETTINGS));
+        awaitStarted(1);
+        future.cancel(true);
+        gate.release();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getInFlight(Priority.INTERACTIVE_READ) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, scheduler.getConcurrencyLimiter().getInFlight());
+        assertEquals(0, scheduler.getConcurrencyLimiter().getDropCount());
+        assertEquals(20, scheduler.getConcurrencyLimiter().getLimit());
+    }
+
+    @Test
+    public void blockingCallTest() throws IOException {
+        RequestScheduler scheduler = new RequestScheduler.Builder().capacity(1).build();
+        OkHttpClient client = newClient(scheduler);
+
+        gate.release();
+        Response response = client.newCall(request(Operation.LOGOUT)).execute();
+        assertEquals(200, response.code());
+        assertEquals(1, scheduler.getQueueWait(Priority.LOGIN).getCount());
+        assertEquals(0, scheduler.getConcurrencyLimiter().getInFlight());
+    }
+
+    private OkHttpClient newClient(RequestScheduler scheduler) {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(scheduler);
+        client.interceptors().add(new TransportInterceptor(new Transport() {
+            @Override
+            public TransportResponse execute(TransportRequest request, CookieHandler cookieHandler)
+                    throws IOException {
+                started.add(request.getOperation());
+                gate.acquireUninterruptibly();
+                if (failWith != null) {
+                    throw failWith;
+                }
+                return StubTransport.response(200, "text/plain", "");
+            }
+        }, new CookieManager()));
+        return client;
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, started.size());
+    }
+
+    private static Request request(Operation operation) {
+        return new Request.Builder().url("http://localhost/").tag(operation).build();
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.brewengine.gv4j.TestFixtures.addGvx;
+import static com.brewengine.gv4j.TestFixtures.loginPage;
+import static org.junit.Assert.*;
+
+public class SessionKeeperTest {
+
+    private static final String HTML = "text/html; charset=UTF-8";
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void delayTest() {
+        SessionKeeper keeper = new SessionKeeper.Builder()
+                .refreshAhead(30, TimeUnit.MINUTES)
+                .jitter(10, TimeUnit.MINUTES)
+                .sessionLifetime(12, TimeUnit.HOURS)
+                .build();
+        long now = System.currentTimeMillis();
+
+        long delay = keeper.delayMillis(now + TimeUnit.HOURS.toMillis(2), now);
+        assertTrue(delay <= TimeUnit.MINUTES.toMillis(90));
+        assertTrue(delay >= TimeUnit.MINUTES.toMillis(80));
+
+        // not logged in, or about to expire
+        assertEquals(0, keeper.delayMillis(0, now));
+        assertEquals(0, keeper.delayMillis(now + TimeUnit.MINUTES.toMillis(10), now));
+
+        delay = keeper.delayMillis(Long.MAX_VALUE, now);
+        assertTrue(delay <= TimeUnit.MINUTES.toMillis(11 * 60 + 30));
+        assertTrue(delay >= TimeUnit.MINUTES.toMillis(11 * 60 + 20));
+    }
+
+    @Test
+    public void delayAfterRefreshTest() {
+        SessionKeeper keeper = new SessionKeeper.Builder()
+                .refreshAhead(30, TimeUnit.MINUTES)
+                .jitter(10, TimeUnit.MINUTES)
+                .retryDelay(1, TimeUnit.MINUTES)
+                .build();
+        long now = System.currentTimeMillis();
+
+        // a token issued for less than the refresh window is kept for half of its lifetime
+        assertEquals(TimeUnit.MINUTES.toMillis(10), keeper.delayAfterRefreshMillis(now + TimeUnit.MINUTES.toMillis(20), now));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), keeper.delayAfterRefreshMillis(now + 1000, now));
+        assertEquals(TimeUnit.MINUTES.toMillis(1), keeper.delayAfterRefreshMillis(0, now));
+
+        long delay = keeper.delayAfterRefreshMillis(now + TimeUnit.HOURS.toMillis(2), now);
+        assertTrue(delay <= TimeUnit.MINUTES.toMillis(90));
+        assertTrue(delay >= TimeUnit.MINUTES.toMillis(80));
+    }
+
+    @Test
+    public void refreshTest() throws Exception {
+        StubTransport transport = new StubTransport();
+        GV gv = new GV(transport);
+        addGvx(gv, "old", 60);
+
+        transport.enqueue(StubTransport.response(200, HTML, loginPage("Email")));
+        transport.enqueue(StubTransport.response(200, HTML, loginPage("Passwd")));
+        transport.enqueue(StubTransport.response(200, HTML, "<html></html>",
+                ImmutableMap.<String, List<String>>of("Set-Cookie",
+                        ImmutableList.of("gvx=new; Domain=.google.com; Path=/; Max-Age=7200"))));
+
+        // expires within the refresh window, so it is refreshed right away
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        SessionKeeper keeper = new SessionKeeper.Builder().scheduler(scheduler).build();
+
+        SessionKeeper.Subscription subscription = keeper.keep(gv, "user@gmail.com", "secret", new SessionKeeper.Listener() {
+            @Override
+            public void onRefresh() {
+                refreshed.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        });
+
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        subscription.cancel();
+
+        assertEquals("new", gv.findCookieByName("gvx").getValue());
+        assertTrue(gv.getGvxExpiry() > System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        assertEquals(1, subscription.getRefreshCount());
+
+        // the login went through the session's interceptors
+        assertEquals(Operation.LOGIN_PASSWORD, transport.getRequests().get(2).getOperation());
+        long count = 0;
+        for (MetricsInterceptor.Snapshot snapshot : gv.getMetrics().snapshot().values()) {
+            count += snapshot.getRequestCount();
+        }
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void retryTest() throws Exception {
+        final CountDownLatch failures = new CountDownLatch(2);
+        SessionKeeper keeper = new SessionKeeper.Builder()
+                .scheduler(scheduler)
+                .retryDelay(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        StubTransport transport = new StubTransport();
+        transport.enqueue(StubTransport.response(500, HTML, ""));
+        transport.enqueue(StubTransport.response(500, HTML, ""));
+        GV gv = new GV(transport);
+        SessionKeeper.Subscription subscription = keeper.keep(gv, "user@gmail.com", "secret", new SessionKeeper.Listener() {
+            @Override
+            public void onRefresh() {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failures.countDown();
+            }
+        });
+        assertTrue(failures.await(5, TimeUnit.SECONDS));
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        assertEquals(0, subscription.getRefreshCount());
+        assertFalse(gv.isLoggedIn());
+    }
+
+}
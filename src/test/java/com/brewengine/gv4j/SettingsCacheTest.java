@@ -0,0 +1,92 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Ticker;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SettingsCacheTest {
+
+    private static final String JSON =
+        "{" +
+            "\"settings_response\":{" +
+                "\"user_preferences\":{" +
+                    "\"default_call_settings\":{" +
+                        "\"disabled_forwarding_id\":[4]" +
+                    "}," +
+                    "\"forwarding\":[" +
+                        "{\"id\":1,\"phone_number\":\"+15555551212\"}," +
+                        "{\"id\":4,\"phone_number\":\"+15555550000\"}" +
+                    "]" +
+                "}" +
+            "}" +
+        "}";
+
+    @Test
+    public void expiresAfterTtlTest() {
+        FakeTicker ticker = new FakeTicker();
+        SettingsCache cache = new SettingsCache(10, TimeUnit.SECONDS, ticker);
+        assertNull(cache.get());
+
+        Settings settings = newSettings();
+        cache.put(settings);
+        assertSame(settings, cache.get());
+
+        ticker.advance(9, TimeUnit.SECONDS);
+        assertSame(settings, cache.get());
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertNull(cache.get());
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void invalidateTest() {
+        SettingsCache cache = new SettingsCache(10, TimeUnit.SECONDS, new FakeTicker());
+        cache.put(newSettings());
+        cache.invalidate();
+        assertNull(cache.get());
+    }
+
+    @Test
+    public void updateWritesThroughTest() {
+        SettingsCache cache = new SettingsCache(10, TimeUnit.SECONDS, new FakeTicker());
+        Settings before = newSettings();
+        cache.put(before);
+
+        cache.update(4, true);
+        cache.update(1, false);
+
+        Settings settings = cache.get();
+        assertNotNull(settings);
+        assertFalse(settings.getPhones().get(0).isEnabled());
+        assertTrue(settings.getPhones().get(1).isEnabled());
+
+        // settings handed out earlier are snapshots and do not change
+        assertTrue(before.getPhones().get(0).isEnabled());
+        assertFalse(before.getPhones().get(1).isEnabled());
+    }
+
+    private static Settings newSettings() {
+        return Settings.valueOf(new Gson().fromJson(JSON, GVJson.class));
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+
+}
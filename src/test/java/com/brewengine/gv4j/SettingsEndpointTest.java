@@ -0,0 +1,58 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Request;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SettingsEndpointTest {
+
+    private final SettingsEndpoint endpoint = new SettingsEndpoint(13);
+
+    @Test
+    public void settingsRequestTest() throws IOException {
+        Request request = endpoint.settingsRequest("token");
+        assertEquals("https://www.google.com/voice/m/x?m=set&v=13", request.urlString());
+        assertEquals(Operation.FETCH_SETTINGS, request.tag());
+        assertEquals("{gvx: \"token\"}", body(request));
+    }
+
+    @Test
+    public void toggleRequestEncodesFieldsTest() {
+        Phone phone = new Phone(7, "Home & Work", "+15555551212", 2, true, false, 3, 1);
+        Request request = endpoint.toggleRequest("token",
+                ImmutableMap.of(phone, false).entrySet().asList());
+
+        HttpUrl url = request.httpUrl();
+        assertEquals("set", url.queryParameter("m"));
+        assertEquals("7", url.queryParameter("fp_id0"));
+        assertEquals("Home & Work", url.queryParameter("fp_name0"));
+        assertEquals("+15555551212", url.queryParameter("fp_num0"));
+        assertEquals("false", url.queryParameter("fp_en0"));
+        assertEquals("v", url.queryParameterName(url.querySize() - 1));
+        assertTrue(request.urlString().contains("fp_name0=Home%20%26%20Work&fp_num0=%2B15555551212"));
+        assertEquals(Operation.TOGGLE_PHONES, request.tag());
+    }
+
+    @Test
+    public void bodyReusedUntilCookieChangesTest() throws IOException {
+        String gvx = "token";
+        assertSame(endpoint.body(gvx), endpoint.body("token"));
+
+        Request request = endpoint.settingsRequest("rotated");
+        assertNotSame(endpoint.body(gvx), request.body());
+        assertEquals("{gvx: \"rotated\"}", body(request));
+    }
+
+    private static String body(Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+}
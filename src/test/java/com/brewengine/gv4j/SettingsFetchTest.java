@@ -0,0 +1,151 @@
+package com.brewengine.gv4j;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.CookieManager;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.brewengine.gv4j.TestFixtures.addGvx;
+import static com.brewengine.gv4j.TestFixtures.response;
+import static org.junit.Assert.*;
+
+public class SettingsFetchTest {
+
+    private static final String JSON = ")]}',\n" +
+        "{" +
+            "\"settings_response\":{" +
+                "\"user_preferences\":{" +
+                    "\"default_call_settings\":{" +
+                        "\"disabled_forwarding_id\":[4]" +
+                    "}," +
+                    "\"forwarding\":[" +
+                        "{\"id\":1,\"phone_number\":\"+15555551212\"}," +
+                        "{\"id\":4,\"phone_number\":\"+15555550000\"}" +
+                    "]" +
+                "}" +
+            "}" +
+        "}";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch release;
+    private GV gv;
+
+    @Before
+    public void setUp() {
+        release = new CountDownLatch(1);
+
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                requests.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return response(chain.request(), JSON);
+            }
+        });
+
+        gv = new GV(client, new CookieManager(new IndexedCookieStore(), null));
+        addGvx(gv, "token");
+    }
+
+    @Test
+    public void concurrentFetchesShareRequestTest() throws Exception {
+        ListenableFuture<Settings> a = gv.refreshSettingsAsync();
+        ListenableFuture<Settings> b = gv.refreshSettingsAsync();
+        ListenableFuture<Settings> c = gv.fetchSettingsAsync();
+        release.countDown();
+
+        Settings settings = a.get(1, TimeUnit.SECONDS);
+        assertSame(settings, b.get(1, TimeUnit.SECONDS));
+        assertSame(settings, c.get(1, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(2, settings.getPhones().size());
+
+        // once complete, the next fetch goes to the network again
+        gv.refreshSettings();
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void refreshDoesNotWaitForPollTest() throws Exception {
+        ListenableFuture<Settings> poll = gv.pollSettingsAsync();
+        ListenableFuture<Settings> refresh = gv.refreshSettingsAsync();
+        // a poll joins the interactive fetch in flight
+        ListenableFuture<Settings> secondPoll = gv.pollSettingsAsync();
+        release.countDown();
+
+        Settings settings = refresh.get(1, TimeUnit.SECONDS);
+        assertSame(settings, secondPoll.get(1, TimeUnit.SECONDS));
+        assertNotSame(settings, poll.get(1, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void cancelledCallerDoesNotCancelSharedFetchTest() throws Exception {
+        ListenableFuture<Settings> a = gv.refreshSettingsAsync();
+        ListenableFuture<Settings> b = gv.refreshSettingsAsync();
+        a.cancel(true);
+        release.countDown();
+
+        assertNotNull(b.get(1, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void failureToSendClearsFetchTest() throws Exception {
+        gv.setHedgePolicy(new HedgePolicy(0, 0, Executors.newSingleThreadScheduledExecutor()) {
+            @Override
+            ListenableFuture<Response> enqueue(OkHttpClient client, Request request, MetricsInterceptor metrics) {
+                throw new RejectedExecutionException();
+            }
+        });
+        try {
+            gv.refreshSettingsAsync().get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+
+        // the next fetch is sent rather than joining the failed one
+        gv.setHedgePolicy(null);
+        release.countDown();
+        assertNotNull(gv.refreshSettingsAsync().get(1, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void sharedSettingsAreImmutableTest() throws Exception {
+        release.countDown();
+        Settings settings = gv.refreshSettings();
+
+        try {
+            settings.getPhones().remove(0);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        Settings toggled = settings.withPhoneEnabled(4, true);
+        assertNotSame(settings, toggled);
+        assertFalse(settings.getPhones().get(1).isEnabled());
+        assertTrue(toggled.getPhones().get(1).isEnabled());
+        assertSame(settings, settings.withPhoneEnabled(1, true));
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.brewengine.gv4j;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SettingsLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void historyTest() throws IOException {
+        File file = new File(folder.getRoot(), "settings.log");
+        Settings first = settings(true, "Home");
+        Settings second = first.withPhoneEnabled(2, false);
+        Settings third = settings(true, "Work");
+
+        SettingsLog log = new SettingsLog(file);
+        log.append("a@gmail.com", first, 1000);
+        log.append("b@gmail.com", first, 1500);
+        long before = log.getLength();
+        log.append("a@gmail.com", first, 2000);
+        // an unchanged snapshot only takes a few bytes
+        assertTrue(log.getLength() - before < 16);
+        log.append("a@gmail.com", second, 3000);
+        log.close();
+
+        // reopening carries on with deltas against the last snapshot
+        log = new SettingsLog(file);
+        log.append("a@gmail.com", third, 4000);
+        log.close();
+
+        SettingsLogReader reader = new SettingsLogReader(file);
+        assertEquals(Arrays.asList("a@gmail.com", "b@gmail.com"), reader.getAccounts());
+        assertEquals(4, reader.getSnapshotCount("a@gmail.com"));
+        assertEquals(0, reader.getSnapshotCount("c@gmail.com"));
+
+        List<SettingsLog.Entry> history = reader.history("a@gmail.com");
+        assertEquals(4, history.size());
+        assertEquals(1000, history.get(0).getTimeMillis());
+        assertEquals(4000, history.get(3).getTimeMillis());
+        assertSettings(first, history.get(0).getSettings());
+        assertSame(history.get(0).getSettings(), history.get(1).getSettings());
+        assertSettings(second, history.get(2).getSettings());
+        assertSettings(third, history.get(3).getSettings());
+
+        assertSettings(third, reader.latest("a@gmail.com").getSettings());
+        assertSettings(first, reader.latest("b@gmail.com").getSettings());
+        assertNull(reader.latest("c@gmail.com"));
+
+        final List<Long> times = new ArrayList<Long>();
+        reader.scan(new SettingsLogReader.Listener() {
+            @Override
+            public void onSnapshot(SettingsLog.Entry entry) {
+                times.add(entry.getTimeMillis());
+            }
+        });
+        assertEquals(Arrays.asList(1000L, 1500L, 2000L, 3000L, 4000L), times);
+        reader.close();
+    }
+
+    @Test
+    public void keyframeTest() throws IOException {
+        File file = new File(folder.getRoot(), "settings.log");
+        SettingsLog log = new SettingsLog(file);
+        Settings settings = settings(true, "Home");
+        int count = SettingsLog.KEYFRAME_INTERVAL * 2 + 3;
+        for (int i = 0; i < count; i++) {
+            settings = settings.withPhoneEnabled(2, i % 2 == 0);
+            log.append("a@gmail.com", settings, i);
+        }
+        log.close();
+
+        SettingsLogReader reader = new SettingsLogReader(file);
+        List<SettingsLog.Entry> history = reader.history("a@gmail.com");
+        assertEquals(count, history.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, history.get(i).getTimeMillis());
+            assertEquals(i % 2 == 0, history.get(i).getSettings().isPhoneEnabled(2));
+        }
+        SettingsLog.Entry latest = reader.latest("a@gmail.com");
+        assertEquals(count - 1, latest.getTimeMillis());
+        assertSettings(settings, latest.getSettings());
+        reader.close();
+    }
+
+    @Test
+    public void chunkedMappingTest() throws IOException {
+        File file = new File(folder.getRoot(), "settings.log");
+        SettingsLog log = new SettingsLog(file);
+        Settings settings = settings(true, "Home");
+        int count = SettingsLog.KEYFRAME_INTERVAL + 5;
+        for (int i = 0; i < count; i++) {
+            settings = settings.withPhoneEnabled(2, i % 3 == 0);
+            log.append("a@gmail.com", settings, i);
+            log.append("b\u00e9@gmail.com", settings(i % 2 == 0, "Work " + i), i);
+        }
+        log.close();
+
+        // tiny chunks, so that records, their lengths and their strings straddle chunk boundaries
+        for (int run = 0; run < 6; run++) {
+            long chunkSize = 4L << (run / 2 * 2);
+            // both mapped and read through the channel
+            SettingsLogReader reader = new SettingsLogReader(file, chunkSize, run % 2 == 0);
+            assertEquals(file.length(), reader.getValidLength());
+            assertEquals(Arrays.asList("a@gmail.com", "b\u00e9@gmail.com"), reader.getAccounts());
+
+            List<SettingsLog.Entry> history = reader.history("a@gmail.com");
+            assertEquals(count, history.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, history.get(i).getTimeMillis());
+                assertEquals(i % 3 == 0, history.get(i).getSettings().isPhoneEnabled(2));
+            }
+            assertSettings(settings, reader.latest("a@gmail.com").getSettings());
+            assertSettings(settings((count - 1) % 2 == 0, "Work " + (count - 1)), reader.latest("b\u00e9@gmail.com").getSettings());
+
+            final List<Long> times = new ArrayList<Long>();
+            reader.scan(new SettingsLogReader.Listener() {
+                @Override
+                public void onSnapshot(SettingsLog.Entry entry) {
+                    times.add(entry.getTimeMillis());
+                }
+            });
+            assertEquals(count * 2, times.size());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException {
+        File file = new File(folder.getRoot(), "settings.log");
+        SettingsLog log = new SettingsLog(file);
+        log.append("a@gmail.com", settings(true, "Home"), 1000);
+        long length = log.getLength();
+        log.append("a@gmail.com", settings(false, "Home"), 2000);
+        log.close();
+
+        // a crash in the middle of the last record
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.setLength(out.length() - 2);
+        out.close();
+
+        SettingsLogReader reader = new SettingsLogReader(file);
+        assertEquals(1, reader.getSnapshotCount("a@gmail.com"));
+        reader.close();
+
+        log = new SettingsLog(file);
+        assertEquals(length, log.getLength());
+        log.append("a@gmail.com", settings(false, "Home"), 3000);
+        log.close();
+
+        reader = new SettingsLogReader(file);
+        assertEquals(3000, reader.latest("a@gmail.com").getTimeMillis());
+        assertFalse(reader.latest("a@gmail.com").getSettings().isPhoneEnabled(1));
+        reader.close();
+    }
+
+    @Test
+    public void unreadableRecordTest() throws IOException {
+        File file = new File(folder.getRoot(), "settings.log");
+        SettingsLog log = new SettingsLog(file);
+        log.append("a@gmail.com", settings(true, "Home"), 1000);
+        long length = log.getLength();
+        log.close();
+
+        // a complete record of an unknown type, then more garbage
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(length);
+        out.write(new byte[] {0, 0, 0, 2, 42, 0, 0, 0, 0, 1, 2});
+        out.close();
+
+        SettingsLogReader reader = new SettingsLogReader(file);
+        assertEquals(length, reader.getValidLength());
+        assertEquals(1, reader.getSnapshotCount("a@gmail.com"));
+        reader.close();
+
+        log = new SettingsLog(file);
+        assertEquals(length, log.getLength());
+        log.append("a@gmail.com", settings(false, "Home"), 2000);
+        log.close();
+        assertEquals(log.getLength(), file.length());
+
+        reader = new SettingsLogReader(file);
+        assertEquals(2000, reader.latest("a@gmail.com").getTimeMillis());
+        reader.close();
+    }
+
+    private static Settings settings(boolean enabled, String name) {
+        return new Settings.Builder()
+                .addPhone(1, name, "+15555550001", 1, enabled, true, 3, 1)
+                .addPhone(2, null, "+15555550002", 2, true, false, 0, 0)
+                .addPhone(-7, "\u2603", null, 0, false, false, -1, 0)
+                .build();
+    }
+
+    private static void assertSettings(Settings expected, Settings actual) {
+        assertEquals(expected.getPhoneCount(), actual.getPhoneCount());
+        for (int i = 0; i < expected.getPhoneCount(); i++) {
+            Phone a = expected.getPhones().get(i);
+            Phone b = actual.getPhones().get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getName(), b.getName());
+            assertEquals(a.getPhoneNumber(), b.getPhoneNumber());
+            assertEquals(a.getType(), b.getType());
+            assertEquals(a.isEnabled(), b.isEnabled());
+            assertEquals(a.isSmsEnabled(), b.isSmsEnabled());
+            assertEquals(a.getPolicyBitmask(), b.getPolicyBitmask());
+            assertEquals(a.getBehaviorOnRedirect(), b.getBehaviorOnRedirect());
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.brewengine.gv4j;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class SettingsTest {
+
+    @Test
+    public void indexTest() {
+        Settings settings = settings("[7]",
+                "{\"id\":9,\"phone_number\":\"+15555550009\"}," +
+                "{\"id\":3,\"phone_number\":\"+15555550003\"}," +
+                "{\"id\":7,\"phone_number\":\"+15555550007\"}");
+
+        assertEquals(9, settings.getPhones().get(0).getId());
+        assertEquals(3, settings.getPhone(3).getId());
+        assertFalse(settings.getPhone(7).isEnabled());
+        assertTrue(settings.getPhone(9).isEnabled());
+        assertNull(settings.getPhone(4));
+        assertSame(settings.getPhone(9), settings.getPhoneByNumber("+15555550009"));
+        assertNull(settings.getPhoneByNumber("+15555551212"));
+    }
+
+    @Test
+    public void noDisabledPhonesTest() {
+        Settings settings = settings(null, "{\"id\":1}");
+        assertTrue(settings.getPhone(1).isEnabled());
+    }
+
+    @Test
+    public void diffTest() {
+        Settings before = settings("[2]",
+                "{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}");
+        Settings after = settings("[3]",
+                "{\"id\":5},{\"id\":4},{\"id\":3},{\"id\":2}");
+
+        SettingsDiff diff = before.diff(after);
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(5, diff.getAdded().get(0).getId());
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals(1, diff.getRemoved().get(0).getId());
+        assertEquals(1, diff.getEnabled().size());
+        assertSame(after.getPhone(2), diff.getEnabled().get(0));
+        assertEquals(1, diff.getDisabled().size());
+        assertSame(after.getPhone(3), diff.getDisabled().get(0));
+
+        assertTrue(before.diff(before).isEmpty());
+        assertEquals(4, settings(null, "").diff(before).getAdded().size());
+    }
+
+    @Test
+    public void lazyPhonesTest() {
+        Settings settings = settings("[2]", "{\"id\":1},{\"id\":2},{\"id\":1,\"name\":\"duplicate\"}");
+
+        assertEquals(3, settings.getPhoneCount());
+        assertTrue(settings.isPhoneEnabled(1));
+        assertFalse(settings.isPhoneEnabled(2));
+        assertFalse(settings.isPhoneEnabled(3));
+
+        // phones are created once and then shared
+        assertSame(settings.getPhones().get(1), settings.getPhone(2));
+        assertNull(settings.getPhone(1).getName());
+        assertEquals("duplicate", settings.getPhones().get(2).getName());
+
+        try {
+            settings.getPhones().remove(0);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        Settings toggled = settings.withPhoneEnabled(2, true);
+        assertTrue(toggled.isPhoneEnabled(2));
+        assertFalse(settings.isPhoneEnabled(2));
+        assertSame(settings, settings.withPhoneEnabled(1, true));
+    }
+
+    @Test
+    public void readSettingsTest() throws IOException {
+        // disabled ids may follow the phones they disable
+        Settings settings = GVJsonReader.readSettings(new StringReader(GVJsonReader.XSSI_PREFIX + "\n" +
+                "{\"settings_response\":{\"user_preferences\":{" +
+                "\"forwarding\":[{\"id\":1,\"name\":\"Home\",\"type\":1,\"phone_number\":\"+15555550001\"," +
+                "\"sms_enabled\":true,\"policy_bitmask\":2,\"behavior_on_redirect\":3,\"unused\":[1]}," +
+                "{\"id\":2,\"name\":null}]," +
+                "\"default_call_settings\":{\"disabled_forwarding_id\":[2,null]}}}}"));
+
+        Phone home = settings.getPhone(1);
+        assertEquals("Home", home.getName());
+        assertEquals(1, home.getType());
+        assertEquals("+15555550001", home.getPhoneNumber());
+        assertTrue(home.isSmsEnabled());
+        assertEquals(2, home.getPolicyBitmask());
+        assertEquals(3, home.getBehaviorOnRedirect());
+        assertTrue(home.isEnabled());
+        assertFalse(settings.isPhoneEnabled(2));
+        assertNull(settings.getPhone(2).getName());
+    }
+
+    private static Settings settings(String disabled, String forwarding) {
+        String json = "{\"settings_response\":{\"user_preferences\":{" +
+                "\"default_call_settings\":{" + (disabled == null ? "" : "\"disabled_forwarding_id\":" + disabled) + "}," +
+                "\"forwarding\":[" + forwarding + "]}}}";
+        return Settings.valueOf(new Gson().fromJson(json, GVJson.class));
+    }
+
+}
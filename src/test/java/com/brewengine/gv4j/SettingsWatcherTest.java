@@ -0,0 +1,137 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.brewengine.gv4j.TestFixtures.addGvx;
+import static com.brewengine.gv4j.TestFixtures.response;
+import static org.junit.Assert.*;
+
+public class SettingsWatcherTest {
+
+    private static final String JSON = ")]}',\n" +
+        "{" +
+            "\"settings_response\":{" +
+                "\"user_preferences\":{" +
+                    "\"default_call_settings\":{" +
+                        "\"disabled_forwarding_id\":[%s]" +
+                    "}," +
+                    "\"forwarding\":[" +
+                        "{\"id\":1,\"phone_number\":\"+15555551212\"}," +
+                        "{\"id\":4,\"phone_number\":\"+15555550000\"}" +
+                    "]" +
+                "}" +
+            "}" +
+        "}";
+
+    private final AtomicInteger polls = new AtomicInteger();
+    private volatile String disabled = "4";
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void reportsChangesTest() throws Exception {
+        final BlockingQueue<SettingsDiff> changes = new LinkedBlockingQueue<SettingsDiff>();
+        SettingsWatcher watcher = new SettingsWatcher.Builder()
+                .interval(5, TimeUnit.MILLISECONDS, 20, TimeUnit.MILLISECONDS)
+                .scheduler(scheduler)
+                .build();
+
+        SettingsWatcher.Subscription subscription = watcher.watch(newSession(), new SettingsWatcher.Listener() {
+            @Override
+            public void onChange(Settings settings, SettingsDiff diff) {
+                changes.add(diff);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                fail(t.toString());
+            }
+        });
+
+        while (polls.get() < 3) {
+            Thread.sleep(5);
+        }
+        assertTrue(changes.isEmpty());
+
+        disabled = "1";
+        SettingsDiff diff = changes.poll(1, TimeUnit.SECONDS);
+        assertNotNull(diff);
+        assertEquals(4, diff.getEnabled().get(0).getId());
+        assertEquals(1, diff.getDisabled().get(0).getId());
+
+        subscription.cancel();
+        assertTrue(subscription.isCancelled());
+        Thread.sleep(50);
+        int count = polls.get();
+        Thread.sleep(50);
+        assertEquals(count, polls.get());
+    }
+
+    @Test
+    public void adaptiveIntervalTest() {
+        SettingsWatcher watcher = new SettingsWatcher.Builder()
+                .interval(10, TimeUnit.SECONDS, 60, TimeUnit.SECONDS)
+                .scheduler(scheduler)
+                .build();
+        SettingsWatcher.Subscription subscription = watcher.watch(newSession(), new SettingsWatcher.Listener() {
+            @Override
+            public void onChange(Settings settings, SettingsDiff diff) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        });
+        subscription.cancel();
+
+        long delay = subscription.nextDelayNanos(false);
+        assertEquals(TimeUnit.SECONDS.toNanos(20), subscription.getIntervalNanos());
+        assertTrue(delay >= TimeUnit.SECONDS.toNanos(18) && delay <= TimeUnit.SECONDS.toNanos(22));
+
+        subscription.nextDelayNanos(false);
+        subscription.nextDelayNanos(false);
+        assertEquals(TimeUnit.SECONDS.toNanos(60), subscription.getIntervalNanos());
+
+        subscription.nextDelayNanos(true);
+        assertEquals(TimeUnit.SECONDS.toNanos(10), subscription.getIntervalNanos());
+    }
+
+    private GV newSession() {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                polls.incrementAndGet();
+                return response(chain.request(), String.format(JSON, disabled));
+            }
+        });
+
+        GV gv = new GV(client, new CookieManager(new IndexedCookieStore(), null));
+        addGvx(gv, "token");
+        return gv;
+    }
+
+}
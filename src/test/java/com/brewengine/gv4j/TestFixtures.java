@@ -0,0 +1,102 @@
+package com.brewengine.gv4j;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cookies, pages and responses shared by the tests.
+ */
+final class TestFixtures {
+
+    static final URI VOICE = URI.create("https://www.google.com/voice/m");
+
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=UTF-8");
+
+    private TestFixtures() {
+    }
+
+    static HttpCookie newCookie(String name, String value, String domain) {
+        HttpCookie cookie = new HttpCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath("/");
+        cookie.setVersion(0);
+        return cookie;
+    }
+
+    static List<String> names(String... names) {
+        return Arrays.asList(names);
+    }
+
+    /**
+     * @param cookies
+     * @return the names of the cookies, sorted
+     */
+    static List<String> names(List<HttpCookie> cookies) {
+        String[] names = new String[cookies.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = cookies.get(i).getName();
+        }
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Logs the session in by giving it a gvx cookie that never expires.
+     *
+     * @param gv
+     * @param value
+     */
+    static void addGvx(GV gv, String value) {
+        addGvx(gv, value, -1);
+    }
+
+    /**
+     * Logs the session in by giving it a gvx cookie.
+     *
+     * @param gv
+     * @param value
+     * @param maxAge in seconds, or -1 for a cookie that never expires
+     */
+    static void addGvx(GV gv, String value, long maxAge) {
+        HttpCookie gvx = new HttpCookie("gvx", value);
+        gvx.setDomain(".google.com");
+        gvx.setPath("/");
+        gvx.setMaxAge(maxAge);
+        gv.getCookieManager().getCookieStore().add(VOICE, gvx);
+    }
+
+    /**
+     * @param request
+     * @param body
+     * @return a 200 response to the request with a plain text body
+     */
+    static Response response(Request request, String body) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(ResponseBody.create(TEXT, body))
+                .build();
+    }
+
+    /**
+     * @param field
+     * @return a login page asking for the field
+     */
+    static String loginPage(String field) {
+        return "<html><body><form id=\"" + GV.LOGIN_FORM_ID + "\" method=\"post\""
+                + " action=\"https://accounts.google.com/signin/challenge\">"
+                + "<input type=\"hidden\" name=\"GALX\" value=\"abc\">"
+                + "<input type=\"text\" name=\"" + field + "\" value=\"\">"
+                + "</form></body></html>";
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.brewengine.gv4j;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.brewengine.gv4j.TestFixtures.addGvx;
+import static com.brewengine.gv4j.TestFixtures.loginPage;
+import static org.junit.Assert.*;
+
+public class TransportTest {
+
+    private static final String HTML = "text/html; charset=UTF-8";
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/redirect", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Set-Cookie", "hop=1; Path=/");
+                exchange.getResponseHeaders().add("Location", "/echo");
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                String body = exchange.getRequestMethod() + "|" + cookie + "|"
+                        + new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8);
+                byte[] bytes = body.getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void urlConnectionTransportTest() throws IOException {
+        checkTransport(new UrlConnectionTransport());
+    }
+
+    @Test
+    public void okHttpTransportTest() throws IOException {
+        checkTransport(new OkHttpTransport());
+    }
+
+    private void checkTransport(Transport transport) throws IOException {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        CookieManager cookies = new CookieManager(new IndexedCookieStore(), CookiePolicy.ACCEPT_ALL);
+
+        // the cookie set on the redirect is sent to its target
+        TransportResponse response = transport.execute(TransportRequest.get(base + "/redirect"), cookies);
+        assertEquals(200, response.getCode());
+        assertEquals(base + "/echo", response.getUrl());
+        assertEquals("GET|hop=1|", new String(response.getBody(), Charsets.UTF_8));
+        assertTrue(response.getContentType().startsWith("text/plain"));
+
+        ListMultimap<String, String> fields = LinkedListMultimap.create();
+        fields.put("a", "1 2");
+        fields.put("b", "\u2603");
+        response = transport.execute(TransportRequest.form(base + "/echo", fields), cookies);
+        assertEquals("POST|hop=1|a=1+2&b=%E2%98%83", new String(response.getBody(), Charsets.UTF_8));
+
+        response = transport.execute(TransportRequest.text(base + "/echo", "text/plain", "{gvx: \"x\"}"), cookies);
+        assertEquals("POST|hop=1|{gvx: \"x\"}", new String(response.getBody(), Charsets.UTF_8));
+    }
+
+    @Test
+    public void stubLoginTest() throws IOException {
+        StubTransport transport = new StubTransport();
+        transport.enqueue(StubTransport.response(200, HTML, loginPage("Email")));
+        transport.enqueue(StubTransport.response(200, HTML, loginPage("Passwd")));
+        transport.enqueue(StubTransport.response(200, HTML, "<html></html>",
+                ImmutableMap.<String, List<String>>of("Set-Cookie",
+                        ImmutableList.of("gvx=token; Domain=.google.com; Path=/"))));
+        transport.enqueue(StubTransport.response(200, "text/plain", GVJsonReader.XSSI_PREFIX
+                + "{\"settings_response\":{\"user_preferences\":{\"default_call_settings\":{},"
+                + "\"forwarding\":[{\"id\":1}]}}}"));
+
+        GV gv = new GV(transport);
+        gv.login("user@gmail.com", "secret");
+        assertTrue(gv.isLoggedIn());
+        assertEquals(1, gv.fetchSettings().getPhones().size());
+
+        List<TransportRequest> requests = transport.getRequests();
+        assertEquals(4, requests.size());
+        assertEquals(Operation.LOGIN_PAGE, requests.get(0).getOperation());
+        assertEquals("GET", requests.get(0).getMethod());
+        assertEquals(Operation.LOGIN_USERNAME, requests.get(1).getOperation());
+        assertTrue(new String(requests.get(1).getBody(), Charsets.UTF_8).contains("Email=user@gmail.com"));
+        assertEquals(Operation.LOGIN_PASSWORD, requests.get(2).getOperation());
+        assertTrue(new String(requests.get(2).getBody(), Charsets.UTF_8).contains("Passwd=secret"));
+        assertEquals(Operation.FETCH_SETTINGS, requests.get(3).getOperation());
+        assertEquals("{gvx: \"token\"}", new String(requests.get(3).getBody(), Charsets.UTF_8));
+
+        // requests still pass through the session's interceptors
+        assertEquals(4, countRequests(gv));
+    }
+
+    @Test
+    public void failingTransportTest() throws Exception {
+        GV gv = new GV(new StubTransport());
+        addGvx(gv, "token");
+
+        // no response is queued, so every exchange fails
+        try {
+            gv.fetchSettingsAsync().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        // the failed fetch is not left for later callers to join
+        try {
+            gv.refreshSettings();
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            gv.loginAsync("user@gmail.com", "secret").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+    }
+
+    private static long countRequests(GV gv) {
+        long count = 0;
+        for (MetricsInterceptor.Snapshot snapshot : gv.getMetrics().snapshot().values()) {
+            count += snapshot.getRequestCount();
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.brewengine.gv4j;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WarmUpReportTest {
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                assertEquals("HEAD", exchange.getRequestMethod());
+                try {
+                    // keep the requests overlapping so each needs its own connection
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().add("Location", "/elsewhere");
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void opensPooledConnectionsTest() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(5, TimeUnit.MINUTES.toMillis(1)));
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        WarmUpReport report = WarmUpReport.warmUp(client, ImmutableList.of(url), 3).get(5, TimeUnit.SECONDS);
+
+        assertTrue(report.isWarm());
+        assertEquals(3, report.getRequestCount());
+        assertEquals(3, report.getPooledConnectionCount());
+        assertEquals(3, client.getConnectionPool().getConnectionCount());
+        assertTrue(report.getElapsed(TimeUnit.MILLISECONDS) >= 100);
+    }
+
+    @Test
+    public void failuresAreReportedTest() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(5, TimeUnit.MINUTES.toMillis(1)));
+        server.stop(0);
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        WarmUpReport report = WarmUpReport.warmUp(client, ImmutableList.of(url), 2).get(5, TimeUnit.SECONDS);
+
+        assertFalse(report.isWarm());
+        assertEquals(2, report.getFailureCount());
+    }
+
+}